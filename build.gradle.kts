@@ -10,6 +10,7 @@ plugins {
     alias(libs.plugins.changelog)
     alias(libs.plugins.gradleIntelliJPlatform)
     alias(libs.plugins.gradleJvmWrapper)
+    alias(libs.plugins.jmh)
     alias(libs.plugins.kotlinJvm)
     id("java")
 
@@ -56,6 +57,7 @@ dependencies {
         jetbrainsRuntime()
     }
     testImplementation(libs.openTest4J)
+    testImplementation(libs.testng)
 }
 
 kotlin {
@@ -103,6 +105,13 @@ tasks {
     }
 }
 
+// Benchmarks (src/jmh), run with ./gradlew jmh
+jmh {
+    jmhVersion = "1.37"
+    // The benchmarks use the telemetry corpus of the tests
+    includeTests = true
+}
+
 val riderModel: Configuration by configurations.creating {
     isCanBeConsumed = true
     isCanBeResolved = false
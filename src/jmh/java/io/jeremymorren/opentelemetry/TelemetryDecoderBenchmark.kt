@@ -0,0 +1,55 @@
+package io.jeremymorren.opentelemetry
+
+import io.jeremymorren.opentelemetry.models.Telemetry
+import io.jeremymorren.opentelemetry.models.TelemetryItem
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.decodeFromJsonElement
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Decoding throughput (records per second) of [TelemetryDecoder], compared with the generic decoder of
+ * [TelemetryFactory] (the interned JSON tree, decoded to the model and re-encoded), on the records of [TelemetryCorpus].
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class TelemetryDecoderBenchmark {
+    private lateinit var records: List<String>
+    private lateinit var interner: TelemetryInterner
+    private lateinit var decoder: TelemetryDecoder
+
+    @Setup
+    fun setUp() {
+        records = TelemetryCorpus.records(RECORD_COUNT)
+        interner = TelemetryInterner()
+        decoder = TelemetryDecoder(interner)
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    fun genericDecoder(blackhole: Blackhole) {
+        for (json in records) {
+            val jsonElement = interner.intern(Json.parseToJsonElement(json))
+            val telemetry = Json.decodeFromJsonElement<Telemetry>(jsonElement)
+            blackhole.consume(TelemetryItem(Json.encodeToString(JsonElement.serializer(), jsonElement), telemetry))
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    fun telemetryDecoder(blackhole: Blackhole) {
+        for (json in records) {
+            blackhole.consume(decoder.decode(json))
+        }
+    }
+
+    private companion object {
+        const val RECORD_COUNT = 10_000
+    }
+}
@@ -0,0 +1,46 @@
+package io.jeremymorren.opentelemetry
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Ingestion throughput (records per second) of [TelemetryFactory], compared with the previous ingestion
+ * ([ThreePassIngestion]), on the records of [TelemetryCorpus].
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class TelemetryFactoryBenchmark {
+    private lateinit var lines: List<String>
+    private lateinit var factory: TelemetryFactory
+
+    @Setup
+    fun setUp() {
+        lines = TelemetryCorpus.records(RECORD_COUNT).map { "OpenTelemetry $it" }
+        factory = TelemetryFactory()
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    fun threePasses(blackhole: Blackhole) {
+        for (line in lines) {
+            blackhole.consume(ThreePassIngestion.create(line))
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    fun telemetryFactory(blackhole: Blackhole) {
+        for (line in lines) {
+            blackhole.consume(factory.create(factory.tryReadRecord(line)!!))
+        }
+    }
+
+    private companion object {
+        const val RECORD_COUNT = 10_000
+    }
+}
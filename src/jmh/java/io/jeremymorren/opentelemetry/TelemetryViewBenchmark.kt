@@ -0,0 +1,69 @@
+package io.jeremymorren.opentelemetry
+
+import io.jeremymorren.opentelemetry.models.TelemetryItem
+import io.jeremymorren.opentelemetry.settings.FilterTelemetryMode
+import io.jeremymorren.opentelemetry.store.PrimitiveSort
+import io.jeremymorren.opentelemetry.store.SortedPositionIndex
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.text.SimpleDateFormat
+import java.util.concurrent.TimeUnit
+
+/**
+ * Cost of sorting and rendering the telemetry table (items per second), with the values derived from the telemetry
+ * when they are used ([DerivedTelemetryView]) and with the values computed at decode time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class TelemetryViewBenchmark {
+    private lateinit var items: List<TelemetryItem>
+    private lateinit var dateFormat: SimpleDateFormat
+
+    @Setup
+    fun setUp() {
+        val factory = TelemetryFactory()
+        items = TelemetryCorpus.records(ITEM_COUNT, seed = 2).map { factory.create(it)!! }
+        dateFormat = DerivedTelemetryView.dateFormat()
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEM_COUNT)
+    fun sortParsingTimestamps(): List<TelemetryItem> = DerivedTelemetryView.sortByTimestamp(items)
+
+    @Benchmark
+    @OperationsPerInvocation(ITEM_COUNT)
+    fun sortByPrecomputedTimestamps(): List<TelemetryItem> = items.sortedBy { it.timestampNanos }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEM_COUNT)
+    fun sortByKeyColumn(): IntArray {
+        val keys = LongArray(items.size) { SortedPositionIndex.sortKey(items[it], FilterTelemetryMode.Timestamp) }
+        val refs = IntArray(items.size) { it }
+        PrimitiveSort.sortByKey(refs, refs.size, keys)
+        return refs
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEM_COUNT)
+    fun renderDerivingValues(blackhole: Blackhole) {
+        for (item in items) {
+            blackhole.consume(DerivedTelemetryView.render(item, dateFormat))
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEM_COUNT)
+    fun renderPrecomputedValues(blackhole: Blackhole) {
+        for (item in items) {
+            blackhole.consume(listOf(item.timestampText, item.type, item.detail, item.detailStyle))
+        }
+    }
+
+    private companion object {
+        const val ITEM_COUNT = 20_000
+    }
+}
@@ -0,0 +1,84 @@
+package io.jeremymorren.opentelemetry
+
+/**
+ * Incrementally scans a JSON object that arrives in several fragments, to find where the top-level object ends.
+ *
+ * Only the characters appended since the previous call are scanned, and the brace depth,
+ * string and escape state is kept between calls, so reassembling a record is linear in its size.
+ */
+class JsonRecordScanner {
+    private var depth = 0
+    private var inString = false
+    private var escaped = false
+    private var started = false
+
+    /**
+     * The index (exclusive) of the closing brace of the top-level object, or -1 if the object is not complete.
+     */
+    var endIndex = -1
+        private set
+
+    /**
+     * Number of characters of the buffer already scanned.
+     */
+    private var scanned = 0
+
+    /**
+     * True when the top-level object has been closed.
+     */
+    val isComplete: Boolean get() = endIndex >= 0
+
+    /**
+     * Scan the characters of [buffer] appended since the last call, starting at [start] on the first call.
+     * @return True if the top-level object is complete
+     */
+    fun scan(buffer: CharSequence, start: Int = 0): Boolean {
+        if (isComplete) {
+            return true
+        }
+        var i = maxOf(scanned, start)
+        val length = buffer.length
+        while (i < length) {
+            val c = buffer[i++]
+            if (inString) {
+                if (escaped) {
+                    escaped = false
+                } else if (c == '\\') {
+                    escaped = true
+                } else if (c == '"') {
+                    inString = false
+                }
+                continue
+            }
+            when (c) {
+                '"' -> inString = true
+                '{', '[' -> {
+                    depth++
+                    started = true
+                }
+                '}', ']' -> {
+                    depth--
+                    if (started && depth == 0) {
+                        endIndex = i
+                        scanned = i
+                        return true
+                    }
+                }
+            }
+        }
+        scanned = length
+        return false
+    }
+
+    /**
+     * Reset the scanner to scan a new record.
+     */
+    fun reset() {
+        depth = 0
+        inString = false
+        escaped = false
+        started = false
+        endIndex = -1
+        scanned = 0
+    }
+}
@@ -1,51 +1,127 @@
 package io.jeremymorren.opentelemetry;
 
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.util.IconLoader;
 import com.intellij.ui.content.Content;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.jetbrains.rd.util.lifetime.Lifetime;
 import com.jetbrains.rider.debugger.DotNetDebugProcess;
+import io.jeremymorren.opentelemetry.ingestion.TelemetryIngestionPipeline;
+import io.jeremymorren.opentelemetry.models.Metric;
+import io.jeremymorren.opentelemetry.models.ObjectDictionary;
 import io.jeremymorren.opentelemetry.models.TelemetryItem;
 import io.jeremymorren.opentelemetry.models.TelemetryType;
+import io.jeremymorren.opentelemetry.search.TelemetryQuery;
+import io.jeremymorren.opentelemetry.search.TextMatcher;
 import io.jeremymorren.opentelemetry.settings.AppSettingState;
 import io.jeremymorren.opentelemetry.settings.FilterTelemetryMode;
 import io.jeremymorren.opentelemetry.settings.ProjectSettingsState;
+import io.jeremymorren.opentelemetry.store.EvictionListener;
+import io.jeremymorren.opentelemetry.store.MappedPayloadStore;
+import io.jeremymorren.opentelemetry.store.MetricSeries;
+import io.jeremymorren.opentelemetry.store.MetricSeriesIndex;
+import io.jeremymorren.opentelemetry.store.QueryCache;
+import io.jeremymorren.opentelemetry.store.RetentionPolicy;
+import io.jeremymorren.opentelemetry.store.SelectionMask;
+import io.jeremymorren.opentelemetry.store.SortedPositionIndex;
+import io.jeremymorren.opentelemetry.store.TelemetrySnapshot;
+import io.jeremymorren.opentelemetry.store.TelemetryStore;
+import io.jeremymorren.opentelemetry.store.TrigramIndex;
 import io.jeremymorren.opentelemetry.ui.OpenTelemetryToolWindow;
-import io.jeremymorren.opentelemetry.models.TimeSpan;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import kotlin.Unit;
 import org.eclipse.lsp4j.jsonrpc.validation.NonNull;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import java.time.Instant;
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class OpenTelemetrySession {
+    private static final Logger LOG = Logger.getInstance(OpenTelemetrySession.class);
+
+    /**
+     * Delay before a filter typed in the filter field is applied, so that only the last key of a burst runs a query
+     */
+    private static final long FILTER_DEBOUNCE_MS = 150;
+
     @NotNull
     private static final Icon ICON = IconLoader.getIcon("/icons/pluginIcon.svg", OpenTelemetrySession.class);
     @NotNull
     private final DotNetDebugProcess dotNetDebugProcess;
     @NotNull
-    private final List<TelemetryItem> telemetries = new ArrayList<>();
+    private final TelemetryStore store = new TelemetryStore();
+    /**
+     * Index of the JSON of the store, used to find candidates for the filter. Only accessed by the filter executor.
+     */
+    @NotNull
+    private final TrigramIndex trigramIndex = new TrigramIndex();
+    /**
+     * Results of recent filters, to refine the filter incrementally. Only accessed by the filter executor.
+     */
+    @NotNull
+    private final QueryCache queryCache = new QueryCache();
+    /**
+     * The store positions of the items displayed in the table, in the order of {@link #filteredMode}.
+     * Only accessed on the EDT (and replaced when a filter query completes).
+     */
+    @NotNull
+    private SortedPositionIndex filteredPositions = new SortedPositionIndex();
     @NotNull
-    private final List<TelemetryItem> filteredTelemetries = new ArrayList<>();
+    private FilterTelemetryMode filteredMode;
+    /**
+     * The metric series received in the session. Only accessed on the EDT.
+     */
+    @NotNull
+    private final MetricSeriesIndex metricSeries = new MetricSeriesIndex();
+    @Nullable
+    private final MappedPayloadStore payloadStore;
     @NotNull
-    private final TelemetryFactory telemetryFactory = new TelemetryFactory();
+    private final TelemetryIngestionPipeline ingestionPipeline;
     @NotNull
     private final Lifetime lifetime;
     @NotNull
+    private final ExecutorService filterExecutor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("OpenTelemetry Filter", 1);
+
+    /**
+     * Progress of the latest filter query, cancelled when a newer query starts. Only accessed on the EDT.
+     */
+    @Nullable
+    private ProgressIndicator filterProgress;
+
+    /**
+     * Items evicted while the latest filter query runs, removed from its result when it is displayed.
+     * Only accessed on the EDT.
+     */
+    @NotNull
+    private final LongArrayList queryEvictedPositions = new LongArrayList();
+    @NotNull
+    private final List<TelemetryItem> queryEvictedItems = new ArrayList<>();
+    @NotNull
     private String filter = "";
 
     /**
-     * Filter string, escaped to JSON string
+     * The parsed filter
      */
-    private String filterEscaped = "";
+    @NotNull
+    private TelemetryQuery filterQuery = TelemetryQuery.parse("");
 
     /**
-     * Filter string in lower case, escaped to JSON string
+     * Matcher for the free text of the filter, escaped to JSON string
      */
-    private String filterLowerCaseEscaped = "";
+    @NotNull
+    private TextMatcher filterMatcher = new TextMatcher("", false);
 
 
     @Nullable
@@ -61,11 +137,24 @@ public class OpenTelemetrySession {
 
         projectSettingsState = ProjectSettingsState.getInstance(dotNetDebugProcess.getProject());
 
+        this.payloadStore = AppSettingState.getInstance().spillPayloadsToDisk.getValue() ? createPayloadStore() : null;
+        this.ingestionPipeline = new TelemetryIngestionPipeline(this::addTelemetries, payloadStore);
+        this.filteredMode = AppSettingState.getInstance().filterTelemetryMode.getValue();
+        lifetime.onTermination(() -> {
+            // Output still queued or being parsed must not reach the tool window of the ended session
+            ingestionPipeline.stop();
+            if (payloadStore != null)
+                payloadStore.close();
+            LOG.info("OpenTelemetry session ended: " + ingestionPipeline.getInterner());
+            return Unit.INSTANCE;
+        });
+
         AppSettingState.getInstance().filterTelemetryMode.advise(lifetime, (v) -> {
             this.updateFilteredTelemetries();
             return Unit.INSTANCE;
         });
         AppSettingState.getInstance().caseInsensitiveSearch.advise(lifetime, (v) -> {
+            this.filterMatcher = createFilterMatcher(filterQuery.getText());
             this.updateFilteredTelemetries();
             return Unit.INSTANCE;
         });
@@ -76,11 +165,9 @@ public class OpenTelemetrySession {
     }
 
     public void startListeningToOutputDebugMessage() {
+        // Parsing and UI updates are done by the pipeline, so the debugger output thread is never blocked
         dotNetDebugProcess.getSessionProxy().getTargetDebug().advise(lifetime, outputMessageWithSubject -> {
-            TelemetryItem telemetry = telemetryFactory.tryCreateFromDebugOutputLog(outputMessageWithSubject.getOutput());
-            if (telemetry != null) {
-                addTelemetry(telemetry);
-            }
+            ingestionPipeline.offer(outputMessageWithSubject.getOutput());
             return Unit.INSTANCE;
         });
     }
@@ -95,21 +182,68 @@ public class OpenTelemetrySession {
     }
 
     public void updateFilter(@NonNull String filter) {
+        if (filter.equals(this.filter))
+            return;
         this.filter = filter;
 
-        //NB: We have to escape the string to JSON to allow filtering on special characters
-        this.filterEscaped = escapeJson(filter);
-        this.filterLowerCaseEscaped = filterEscaped.toLowerCase(Locale.ROOT);
+        this.filterQuery = TelemetryQuery.parse(filter);
+        this.filterMatcher = createFilterMatcher(filterQuery.getText());
 
-        updateFilteredTelemetries();
+        updateFilteredTelemetries(FILTER_DEBOUNCE_MS);
+    }
+
+    /**
+     * The number of telemetry items of a type kept in the session.
+     */
+    public int getTelemetryCount(@NotNull TelemetryType telemetryType) {
+        synchronized (store) {
+            return store.getCount(telemetryType);
+        }
+    }
+
+    /**
+     * The number of items displayed in the table (called on the EDT).
+     */
+    public int getFilteredTelemetryCount() {
+        return filteredPositions.size();
+    }
+
+    /**
+     * The item displayed at a row of the table (called on the EDT).
+     * The store is only modified on the EDT, so it can be read without the lock.
+     */
+    @Nullable
+    public TelemetryItem getFilteredTelemetry(int row) {
+        return store.get(filteredPositions.positionAt(row));
+    }
+
+    /**
+     * The series of a tag set of a metric (called on the EDT), or null if no value was received.
+     */
+    @Nullable
+    public MetricSeries getMetricSeries(@Nullable String meterName, @Nullable String name, @Nullable ObjectDictionary tags) {
+        return metricSeries.get(meterName, name, tags);
     }
 
     public void clear() {
-        this.telemetries.clear();
+        synchronized (store) {
+            store.forEach(TelemetryItem::release);
+            store.clear();
+            filteredPositions.clear();
+        }
+        filterExecutor.execute(queryCache::clear);
+        metricSeries.clear();
+        if (openTelemetryToolWindow != null)
+            openTelemetryToolWindow.updateTelemetries();
         updateFilteredTelemetries();
+        if (openTelemetryToolWindow != null)
+            openTelemetryToolWindow.updateTelemetryTypeCounters();
     }
 
-    private void addTelemetry(@NotNull TelemetryItem telemetry) {
+    /**
+     * Add a batch of parsed telemetry (called on the EDT by the ingestion pipeline)
+     */
+    private void addTelemetries(@NotNull List<TelemetryItem> batch) {
         if (firstMessage) {
             firstMessage = false;
 
@@ -125,79 +259,221 @@ public class OpenTelemetrySession {
             dotNetDebugProcess.getSession().getUI().addContent(content);
         }
 
-        int index = -1;
-        boolean visible = false;
-        synchronized (telemetries) {
-            telemetries.add(telemetry);
-            if (isTelemetryVisible(telemetry)) {
-                FilterTelemetryMode value = AppSettingState.getInstance().filterTelemetryMode.getValue();
-                switch (value) {
-                    case Timestamp:
-                        index = Collections.binarySearch(filteredTelemetries, telemetry,
-                                Comparator.comparing(OpenTelemetrySession::getDuration));
-                        if (index < 0)
-                            index = ~index;
-                        filteredTelemetries.add(index, telemetry);
-                        break;
-                    case Duration:
-                        index = Collections.binarySearch(filteredTelemetries, telemetry,
-                                Comparator.comparing(OpenTelemetrySession::getTimestamp));
-                        if (index < 0)
-                            index = ~index;
-                        filteredTelemetries.add(index, telemetry);
-                        break;
-                    default:
-                        filteredTelemetries.add(telemetry);
-                        break;
-                }
-                visible = true;
+        long now = System.currentTimeMillis();
+        RetentionPolicy retentionPolicy = createRetentionPolicy();
+        IntArrayList removedRows = new IntArrayList();
+        EvictionListener evicted = (position, telemetry) -> {
+            int row = filteredPositions.remove(SortedPositionIndex.sortKey(telemetry, filteredMode), position);
+            if (row != -1)
+                removedRows.add(row);
+            if (telemetry.getType() == TelemetryType.Metric)
+                metricSeries.evicted(position);
+            if (filterProgress != null) {
+                queryEvictedPositions.add(position);
+                queryEvictedItems.add(telemetry);
             }
+            telemetry.release();
+        };
+        synchronized (store) {
+            store.evictExpired(now, retentionPolicy, evicted);
+        }
+        removeTelemetryRows(removedRows);
+        for (TelemetryItem telemetry : batch) {
+            addTelemetry(telemetry, now, retentionPolicy, evicted, removedRows);
         }
         if (openTelemetryToolWindow != null)
-            openTelemetryToolWindow.addTelemetry(index, telemetry, visible,
-                    AppSettingState.getInstance().filterTelemetryMode.getValue() == FilterTelemetryMode.Default);
+            openTelemetryToolWindow.updateTelemetryTypeCounters();
     }
 
-    private void updateFilteredTelemetries() {
-        synchronized (telemetries) {
-            filteredTelemetries.clear();
-            Stream<TelemetryItem> stream = telemetries.stream().filter(this::isTelemetryVisible);
-            stream = switch (AppSettingState.getInstance().filterTelemetryMode.getValue()) {
-                case Duration -> stream.sorted(Comparator.comparing(OpenTelemetrySession::getDuration));
-                case Timestamp -> stream.sorted(Comparator.comparing(OpenTelemetrySession::getTimestamp));
-                default -> stream;
-            };
-            filteredTelemetries.addAll(stream.toList());
+    private void addTelemetry(
+            @NotNull TelemetryItem telemetry,
+            long now,
+            @NotNull RetentionPolicy retentionPolicy,
+            @NotNull EvictionListener evicted,
+            @NotNull IntArrayList removedRows) {
+        int row = -1;
+        boolean stored;
+        long position;
+        synchronized (store) {
+            position = store.add(telemetry, now, retentionPolicy, evicted);
+            // The item itself may have been evicted by a type quota
+            stored = store.get(position) != null;
+            if (stored && isTelemetryVisible(telemetry))
+                row = filteredPositions.insert(SortedPositionIndex.sortKey(telemetry, filteredMode), position);
+        }
+        removeTelemetryRows(removedRows);
+        if (stored && telemetry.getType() == TelemetryType.Metric) {
+            Metric metric = telemetry.getTelemetry().getMetric();
+            if (metric != null)
+                metricSeries.add(metric, position);
         }
+        if (row != -1 && openTelemetryToolWindow != null)
+            openTelemetryToolWindow.addTelemetry(row, filteredMode == FilterTelemetryMode.Default);
+    }
+
+    /**
+     * Remove the rows of evicted items from the table.
+     * @param removedRows The rows removed from the filtered view, in the order they were removed (cleared)
+     */
+    private void removeTelemetryRows(@NotNull IntArrayList removedRows) {
+        if (removedRows.isEmpty())
+            return;
         if (openTelemetryToolWindow != null)
-            openTelemetryToolWindow.setTelemetries(telemetries, filteredTelemetries);
+            openTelemetryToolWindow.removeTelemetries(removedRows.toIntArray());
+        removedRows.clear();
+    }
+
+    private void updateFilteredTelemetries() {
+        updateFilteredTelemetries(0);
+    }
+
+    /**
+     * Run the filter query on the filter executor, and display its result on the EDT.
+     * A query still running is cancelled, and its result discarded.
+     * @param delayMs Delay before the query starts (it is cancelled if a newer query starts meanwhile)
+     */
+    private void updateFilteredTelemetries(long delayMs) {
+        if (filterProgress != null)
+            filterProgress.cancel();
+        ProgressIndicator progress = new EmptyProgressIndicator();
+        filterProgress = progress;
+        queryEvictedPositions.clear();
+        queryEvictedItems.clear();
+        if (openTelemetryToolWindow != null)
+            openTelemetryToolWindow.setFilterInProgress(true);
+
+        SelectionMask mask = createSelectionMask();
+        boolean hasText = !filterQuery.getText().isEmpty();
+        TextMatcher matcher = filterMatcher;
+        Predicate<TelemetryItem> predicate = filterQuery.getResidualPredicate();
+        FilterTelemetryMode mode = AppSettingState.getInstance().filterTelemetryMode.getValue();
+
+        Runnable query = () -> {
+            if (progress.isCanceled())
+                return;
+            try {
+                ProgressManager.getInstance().runProcess(() -> {
+                    // The lock is only held to copy the items, so that telemetry keeps being added while filtering
+                    TelemetrySnapshot snapshot;
+                    synchronized (store) {
+                        snapshot = store.snapshot(mask, mode);
+                    }
+                    // The free text is matched first (with the index), then the type, level and error terms
+                    // (with the bitmaps), then the other structured terms
+                    long[] matches = hasText ? queryCache.find(snapshot, trigramIndex, matcher) : null;
+                    SortedPositionIndex result = snapshot.selectIndex(matches, predicate);
+                    ApplicationManager.getApplication().invokeLater(
+                            () -> applyFilterResult(progress, result, mode, snapshot.getTail()));
+                }, progress);
+            } catch (ProcessCanceledException e) {
+                // A newer query replaced this one
+            }
+        };
+        if (delayMs > 0) {
+            AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                    () -> filterExecutor.execute(query), delayMs, TimeUnit.MILLISECONDS);
+        } else {
+            filterExecutor.execute(query);
+        }
+    }
+
+    /**
+     * The conditions of the type checkboxes and of the indexed terms of the filter
+     */
+    @NotNull
+    private SelectionMask createSelectionMask() {
+        int typeCount = TelemetryType.values().length;
+        boolean[] queryTypes = filterQuery.getTypeMask();
+        boolean[] types = new boolean[typeCount + 1];
+        for (TelemetryType type : TelemetryType.values()) {
+            types[type.ordinal()] = projectSettingsState.getTelemetryVisible(type) &&
+                    (queryTypes == null || queryTypes[type.ordinal()]);
+        }
+        // Items without a type are always visible
+        types[typeCount] = queryTypes == null || queryTypes[typeCount];
+        return new SelectionMask(types, filterQuery.getLevelMask(), filterQuery.getError());
+    }
+
+    /**
+     * Display the result of a filter query (called on the EDT), unless a newer query was started.
+     * The result was built from a snapshot: only the items evicted or added since are reconciled here.
+     * @param result The store positions of the visible items, in the order of the mode
+     * @param coveredTo Items at or after this store position were added after the query
+     */
+    private void applyFilterResult(
+            @NotNull ProgressIndicator progress,
+            @NotNull SortedPositionIndex result,
+            @NotNull FilterTelemetryMode mode,
+            long coveredTo) {
+        if (progress != filterProgress)
+            return;
+        filterProgress = null;
+
+        synchronized (store) {
+            // Items evicted meanwhile are removed, and items added meanwhile are inserted as if they were just received
+            for (int i = 0; i < queryEvictedPositions.size(); i++) {
+                long position = queryEvictedPositions.getLong(i);
+                result.remove(SortedPositionIndex.sortKey(queryEvictedItems.get(i), mode), position);
+            }
+            for (long position = coveredTo; position < store.getTail(); position++) {
+                TelemetryItem telemetry = store.get(position);
+                if (telemetry != null && isTelemetryVisible(telemetry))
+                    result.insert(SortedPositionIndex.sortKey(telemetry, mode), position);
+            }
+            filteredPositions = result;
+            filteredMode = mode;
+        }
+        queryEvictedPositions.clear();
+        queryEvictedItems.clear();
+        if (openTelemetryToolWindow != null) {
+            openTelemetryToolWindow.updateTelemetries();
+            openTelemetryToolWindow.setFilterInProgress(false);
+        }
+    }
+
+    @Nullable
+    private static MappedPayloadStore createPayloadStore() {
+        try {
+            return MappedPayloadStore.create();
+        } catch (IOException e) {
+            LOG.warn("Failed to create telemetry payload file, telemetry will be kept in memory", e);
+            return null;
+        }
     }
 
     private boolean isTelemetryVisible(@NotNull TelemetryItem telemetry) {
-        var type = telemetry.getTelemetry().getType();
+        var type = telemetry.getType();
         if (type != null && !projectSettingsState.getTelemetryVisible(type))
             return false;
 
-        if (!filter.isEmpty()) {
-            if (AppSettingState.getInstance().caseInsensitiveSearch.getValue())
-                return telemetry.getLowerCaseJson().toLowerCase().contains(filterLowerCaseEscaped);
-            else
-                return telemetry.getJson().contains(filterEscaped);
+        if (!filterQuery.test(telemetry))
+            return false;
+
+        if (!filterQuery.getText().isEmpty()) {
+            return filterMatcher.matches(telemetry.getJson());
         }
 
         return true;
     }
 
-    private static TimeSpan getDuration(TelemetryItem telemetry) {
-        if (telemetry.getDuration() == null)
-            return new TimeSpan(0, 0, 0);
-        return telemetry.getDuration();
+    @NotNull
+    private static RetentionPolicy createRetentionPolicy() {
+        AppSettingState settings = AppSettingState.getInstance();
+        int[] typeQuotas = new int[TelemetryType.values().length];
+        for (TelemetryType type : TelemetryType.values()) {
+            typeQuotas[type.ordinal()] = settings.getRetentionQuota(type).getValue();
+        }
+        return new RetentionPolicy(
+                settings.retentionMaxItems.getValue(),
+                settings.retentionMaxMegabytes.getValue() * 1024L * 1024L,
+                settings.retentionMaxAgeMinutes.getValue() * 60_000L,
+                typeQuotas);
     }
 
-    private static Instant getTimestamp(TelemetryItem telemetry) {
-        if (telemetry.getTimestamp() == null)
-            return Instant.EPOCH;
-        return telemetry.getTimestamp();
+    @NotNull
+    private static TextMatcher createFilterMatcher(@NotNull String filter) {
+        //NB: We have to escape the string to JSON to allow filtering on special characters
+        return new TextMatcher(escapeJson(filter), AppSettingState.getInstance().caseInsensitiveSearch.getValue());
     }
 
     private static String escapeJson(String input) {
@@ -0,0 +1,1059 @@
+@file:OptIn(ExperimentalSerializationApi::class)
+
+package io.jeremymorren.opentelemetry
+
+import io.jeremymorren.opentelemetry.models.*
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.json.*
+import java.util.Arrays
+import kotlin.enums.EnumEntries
+
+/**
+ * Decodes the JSON of a record straight into the [Telemetry] model, in a single pass over the text.
+ * Only the dictionaries (tags, attributes, resource) are kept as JSON trees.
+ *
+ * While reading, the decoder checks that the record is in the compact form the JSON encoder writes (as re-encoding
+ * the parsed tree would). Most records are: their text is kept as is. Otherwise the compact JSON is written from the
+ * first difference.
+ * The strings it reads are interned with the same rules as [TelemetryInterner.intern]. Each thread keeps a small cache
+ * of the shared keys and values, found without creating the string.
+ * Records that do not have the expected shape (e.g. an unknown enum value, a value of an unexpected type, a duplicate
+ * key, or invalid JSON) are rejected: they must be decoded by the generic decoder, which also reports the errors.
+ * Unknown keys are ignored, as by the generic decoder (the models are [JsonIgnoreUnknownKeys]):
+ * they are kept in the JSON, but not in the model.
+ * Thread safe.
+ */
+class TelemetryDecoder(private val interner: TelemetryInterner) {
+    /**
+     * The reader of each thread, reused for its records
+     */
+    private val readers = ThreadLocal.withInitial { RecordReader(interner) }
+
+    /**
+     * @return The telemetry item, or null if the record must be decoded by the generic decoder
+     */
+    fun decode(json: String): TelemetryItem? {
+        return try {
+            readers.get().readRecord(json)
+        } catch (e: UnsupportedShapeException) {
+            null
+        }
+    }
+}
+
+/**
+ * Thrown when a record does not have the expected shape (without stack trace, as it is not an error)
+ */
+private class UnsupportedShapeException : RuntimeException(null, null, false, false)
+
+private fun unsupported(): Nothing = throw UnsupportedShapeException()
+
+/**
+ * Escape sequences of the control characters, as written by the JSON encoder
+ */
+private val CONTROL_ESCAPES = Array(0x20) { c ->
+    when (c) {
+        '\b'.code -> "\\b"
+        '\t'.code -> "\\t"
+        '\n'.code -> "\\n"
+        0x0C -> "\\f"
+        '\r'.code -> "\\r"
+        else -> "\\u00" + Character.forDigit(c shr 4, 16) + Character.forDigit(c and 0xF, 16)
+    }
+}
+
+/**
+ * Number of sets of the caches of shared keys and values of a reader, as a power of 2
+ */
+private const val CACHE_BITS = 10
+private const val CACHE_SIZE = 1 shl CACHE_BITS
+
+/**
+ * Cache of shared instances by their text, two-way set associative:
+ * a text is in one of the two entries of its set, the most recently added first.
+ */
+private class TextCache<T : Any> {
+    private val texts = arrayOfNulls<CharArray>(CACHE_SIZE * 2)
+    private val values = arrayOfNulls<Any>(CACHE_SIZE * 2)
+
+    /**
+     * The instance of a text, or null
+     * @param set The set of the text, from its hash
+     */
+    @Suppress("UNCHECKED_CAST")
+    fun get(set: Int, chars: CharArray, start: Int, end: Int): T? {
+        val index = set * 2
+        for (i in index..index + 1) {
+            val text = texts[i] ?: return null
+            if (Arrays.equals(chars, start, end, text, 0, text.size)) {
+                return values[i] as T
+            }
+        }
+        return null
+    }
+
+    fun put(set: Int, text: String, value: T) {
+        val index = set * 2
+        texts[index + 1] = texts[index]
+        values[index + 1] = values[index]
+        texts[index] = text.toCharArray()
+        values[index] = value
+    }
+}
+
+/**
+ * Capacity beyond which the buffers of a record are not kept for the next record
+ */
+private const val MAX_RETAINED_CAPACITY = 64 * 1024
+
+/**
+ * Reads records, one at a time. Each read function consumes a value and checks (or writes) its compact JSON.
+ */
+private class RecordReader(private val interner: TelemetryInterner) {
+    /**
+     * The text of the record, copied to a buffer reused between records (scanned faster than the string)
+     */
+    private var chars = CharArray(1024)
+    private var length = 0
+    private var position = 0
+
+    /**
+     * The compact JSON of the record, once it differs from the text: until then, the compact JSON is the text read
+     * so far (`chars[0, position)`).
+     */
+    private var out = StringBuilder()
+    private var rewritten = false
+
+    /**
+     * The keys of the objects being read, from the outermost object
+     */
+    private var keys = arrayOfNulls<String>(32)
+    private var keyCount = 0
+
+    /**
+     * The entries of the dictionary being read (dictionaries are not nested)
+     */
+    private var entryKeys = arrayOfNulls<String>(16)
+    private var entryElements = arrayOfNulls<JsonElement>(16)
+
+    /**
+     * The last string token: the range of its text (without quotes), and its value if it has escape sequences
+     * (otherwise the value is the text)
+     */
+    private var tokenStart = 0
+    private var tokenEnd = 0
+    private var tokenValue: String? = null
+
+    /**
+     * Shared keys and string values, by their text
+     */
+    private val keyCache = TextCache<String>()
+    private val valueCache = TextCache<JsonPrimitive>()
+
+    /**
+     * The last resource object read, as read and as written to the compact JSON, and its dictionary.
+     * The resource is usually the same for all the records of a process: its text is then only compared.
+     */
+    private var resourceText: CharArray? = null
+    private var resourceCompactText: String? = null
+    private var resourceObject: JsonObject? = null
+    private var resourceSize = -1L
+    private var resource: ObjectDictionary? = null
+
+    /**
+     * Shared instances found in the caches, and the heap bytes they saved, counted by the interner after each record
+     */
+    private var sharedCount = 0
+    private var sharedBytes = 0L
+
+    /**
+     * The last number token: the range of its text, and its value as a long ([numberIsLong]) or a double.
+     * [numberIsCompact] tells whether the text is the one of its value (as written by the JSON encoder).
+     */
+    private var numberStart = 0
+    private var numberEnd = 0
+    private var numberIsLong = false
+    private var numberIsCompact = false
+    private var numberLong = 0L
+    private var numberDouble = 0.0
+
+    fun readRecord(json: String): TelemetryItem {
+        length = json.length
+        if (chars.size < length) {
+            chars = CharArray(maxOf(length, chars.size * 2))
+        }
+        json.toCharArray(chars, 0, 0, length)
+        position = 0
+        rewritten = false
+        keyCount = 0
+        try {
+            var activity: Activity? = null
+            var metric: Metric? = null
+            var log: LogMessage? = null
+            var resource: ObjectDictionary? = null
+            readObject { key ->
+                when (key) {
+                    "activity" -> activity = readNullable { readActivity() }
+                    "metric" -> metric = readNullable { readMetric() }
+                    "log" -> log = readNullable { readLog() }
+                    "resource" -> resource = readNullable { readResource() }
+                    else -> readElement(key)
+                }
+            }
+            skipWhitespace()
+            if (position != length) {
+                unsupported()
+            }
+            val compactJson = if (rewritten) out.toString() else json
+            return TelemetryItem(compactJson, Telemetry(activity, metric, log, resource))
+        } finally {
+            // Entries of a dictionary whose reading failed
+            entryKeys.fill(null)
+            entryElements.fill(null)
+            if (out.capacity() > MAX_RETAINED_CAPACITY) {
+                out = StringBuilder()
+            }
+            if (chars.size > MAX_RETAINED_CAPACITY) {
+                chars = CharArray(1024)
+            }
+            out.setLength(0)
+            interner.recordShared(sharedCount, sharedBytes)
+            sharedCount = 0
+            sharedBytes = 0
+        }
+    }
+
+    private fun readActivity(): Activity {
+        var rootId: String? = null
+        var traceId: String? = null
+        var spanId: String? = null
+        var parentSpanId: String? = null
+        var activityTraceFlags: String? = null
+        var traceStateString: String? = null
+        var source: ActivitySource? = null
+        var displayName: String? = null
+        var kind: ActivityKind? = null
+        var startTime: String? = null
+        var duration: TimeSpan? = null
+        var tags: ObjectDictionary? = null
+        var operationName: String? = null
+        var status: ActivityStatusCode? = null
+        var statusDescription: String? = null
+        var events: List<ActivityEvent>? = null
+        readObject { key ->
+            when (key) {
+                "rootId" -> rootId = readString(key)
+                "traceId" -> traceId = readString(key)
+                "spanId" -> spanId = readString(key)
+                "parentSpanId" -> parentSpanId = readString(key)
+                "activityTraceFlags" -> activityTraceFlags = readString(key)
+                "traceStateString" -> traceStateString = readString(key)
+                "source" -> source = readNullable { readSource() }
+                "displayName" -> displayName = readString(key)
+                "kind" -> kind = readNullable { readEnum(ActivityKind.entries) }
+                "startTime" -> startTime = readString(key)
+                "duration" -> duration = readNullable { readTimeSpan() }
+                "tags" -> tags = readDictionary()
+                "operationName" -> operationName = readString(key)
+                "status" -> status = readNullable { readEnum(ActivityStatusCode.entries) }
+                "statusDescription" -> statusDescription = readString(key)
+                "events" -> events = readNullable { readList { readEvent() } }
+                else -> readElement(key)
+            }
+        }
+        return Activity(
+            rootId = rootId,
+            traceId = traceId,
+            spanId = spanId,
+            parentSpanId = parentSpanId,
+            activityTraceFlags = activityTraceFlags,
+            traceStateString = traceStateString,
+            source = source,
+            displayName = displayName,
+            kind = kind,
+            startTime = startTime,
+            duration = duration,
+            tags = tags,
+            operationName = operationName,
+            status = status,
+            statusDescription = statusDescription,
+            events = events
+        )
+    }
+
+    private fun readSource(): ActivitySource {
+        var name: String? = null
+        var version: String? = null
+        readObject { key ->
+            when (key) {
+                "name" -> name = readString(key)
+                "version" -> version = readString(key)
+                else -> readElement(key)
+            }
+        }
+        return ActivitySource(name ?: unsupported(), version)
+    }
+
+    private fun readEvent(): ActivityEvent {
+        var name: String? = null
+        var timestamp: String? = null
+        var attributes: ObjectDictionary? = null
+        readObject { key ->
+            when (key) {
+                "name" -> name = readString(key)
+                "timestamp" -> timestamp = readString(key)
+                "attributes" -> attributes = readDictionary()
+                else -> readElement(key)
+            }
+        }
+        return ActivityEvent(name, timestamp, attributes)
+    }
+
+    private fun readLog(): LogMessage {
+        var body: String? = null
+        var formattedMessage: String? = null
+        var logLevel: LogLevel? = null
+        var timestamp: String? = null
+        var exception: ExceptionInfo? = null
+        var attributes: ObjectDictionary? = null
+        var traceId: String? = null
+        var spanId: String? = null
+        var categoryName: String? = null
+        var eventId: EventId? = null
+        readObject { key ->
+            when (key) {
+                "body" -> body = readString(key)
+                "formattedMessage" -> formattedMessage = readString(key)
+                "logLevel" -> logLevel = readNullable { readEnum(LogLevel.entries) }
+                "timestamp" -> timestamp = readString(key)
+                "exception" -> exception = readNullable { readException() }
+                "attributes" -> attributes = readDictionary()
+                "traceId" -> traceId = readString(key)
+                "spanId" -> spanId = readString(key)
+                "categoryName" -> categoryName = readString(key)
+                "eventId" -> eventId = readNullable { readEventId() }
+                else -> readElement(key)
+            }
+        }
+        return LogMessage(
+            body = body,
+            formattedMessage = formattedMessage,
+            logLevel = logLevel,
+            timestamp = timestamp,
+            exception = exception,
+            attributes = attributes,
+            traceId = traceId,
+            spanId = spanId,
+            categoryName = categoryName,
+            eventId = eventId
+        )
+    }
+
+    private fun readException(): ExceptionInfo {
+        var message: String? = null
+        var display: String? = null
+        var type: String? = null
+        var innerException: ExceptionInfo? = null
+        readObject { key ->
+            when (key) {
+                "message" -> message = readString(key)
+                "display" -> display = readString(key)
+                "type" -> type = readString(key)
+                "innerException" -> innerException = readNullable { readException() }
+                else -> readElement(key)
+            }
+        }
+        return ExceptionInfo(message, display, type, innerException)
+    }
+
+    private fun readEventId(): EventId {
+        var id: Int? = null
+        var name: String? = null
+        readObject { key ->
+            when (key) {
+                "id" -> id = readInt()
+                "name" -> name = readString(key)
+                else -> readElement(key)
+            }
+        }
+        return EventId(id ?: unsupported(), name)
+    }
+
+    private fun readMetric(): Metric {
+        var metricType: String? = null
+        var temporality: String? = null
+        var name: String? = null
+        var description: String? = null
+        var unit: String? = null
+        var meterName: String? = null
+        var meterVersion: String? = null
+        var meterTags: ObjectDictionary? = null
+        var points: List<MetricPoint>? = null
+        readObject { key ->
+            when (key) {
+                "metricType" -> metricType = readString(key)
+                "temporality" -> temporality = readString(key)
+                "name" -> name = readString(key)
+                "description" -> description = readString(key)
+                "unit" -> unit = readString(key)
+                "meterName" -> meterName = readString(key)
+                "meterVersion" -> meterVersion = readString(key)
+                "meterTags" -> meterTags = readDictionary()
+                "points" -> points = readNullable { readList { readPoint() } }
+                else -> readElement(key)
+            }
+        }
+        return Metric(
+            metricType = metricType,
+            temporality = temporality,
+            name = name,
+            description = description,
+            unit = unit,
+            meterName = meterName,
+            meterVersion = meterVersion,
+            meterTags = meterTags,
+            points = points
+        )
+    }
+
+    private fun readPoint(): MetricPoint {
+        var startTime: String? = null
+        var endTime: String? = null
+        var tags: ObjectDictionary? = null
+        var longSum: Long? = null
+        var doubleSum: Double? = null
+        var longGauge: Long? = null
+        var doubleGauge: Double? = null
+        var histogramCount: Long? = null
+        var histogramSum: Double? = null
+        readObject { key ->
+            when (key) {
+                "startTime" -> startTime = readString(key)
+                "endTime" -> endTime = readString(key)
+                "tags" -> tags = readDictionary()
+                "longSum" -> longSum = readNullable { readLong() }
+                "doubleSum" -> doubleSum = readNullable { readDouble() }
+                "longGauge" -> longGauge = readNullable { readLong() }
+                "doubleGauge" -> doubleGauge = readNullable { readDouble() }
+                "histogramCount" -> histogramCount = readNullable { readLong() }
+                "histogramSum" -> histogramSum = readNullable { readDouble() }
+                else -> readElement(key)
+            }
+        }
+        return MetricPoint(
+            startTime = startTime,
+            endTime = endTime,
+            tags = tags,
+            longSum = longSum,
+            doubleSum = doubleSum,
+            longGauge = longGauge,
+            doubleGauge = doubleGauge,
+            histogramCount = histogramCount,
+            histogramSum = histogramSum
+        )
+    }
+
+    /**
+     * Read the resource object, shared between the records by the interner.
+     */
+    private fun readResource(): ObjectDictionary {
+        skipWhitespace()
+        val start = position
+        val lastText = resourceText
+        if (lastText != null && matches(start, lastText)) {
+            // The same object as the last one (an object ends with its closing brace)
+            val compactText = resourceCompactText
+            if (compactText != null) {
+                rewriteFrom(start)
+                out.append(compactText)
+            } else if (rewritten) {
+                out.append(lastText)
+            }
+            position += lastText.size
+            if (resourceSize < 0) {
+                resourceSize = interner.resourceSize(resourceObject!!)
+            }
+            sharedCount++
+            sharedBytes += resourceSize
+            return resource!!
+        }
+        val outStart = out.length
+        val wasRewritten = rewritten
+        val shared = interner.internResource(readJsonObject())
+        resourceText = chars.copyOfRange(start, position)
+        // The compact JSON of the resource, if it differs from its text
+        resourceCompactText = when {
+            !rewritten -> null
+            wasRewritten -> out.substring(outStart).takeUnless { it.length == position - start && matches(start, it) }
+            // Rewritten from within the resource: the text before it was written as is
+            else -> out.substring(start)
+        }
+        resourceObject = shared
+        resourceSize = -1
+        val dictionary = ObjectDictionary(shared)
+        resource = dictionary
+        return dictionary
+    }
+
+    private fun readDictionary(): ObjectDictionary? = readNullable { readDictionaryEntries() }
+
+    /**
+     * Read the entries of a dictionary into sorted arrays, without building the JSON object
+     */
+    private fun readDictionaryEntries(): ObjectDictionary {
+        var count = 0
+        readObject { key ->
+            val element = readElement(key)
+            if (count == entryKeys.size) {
+                entryKeys = entryKeys.copyOf(count * 2)
+                entryElements = entryElements.copyOf(count * 2)
+            }
+            // Insertion sort: dictionaries are small, and their keys are distinct
+            var i = count++
+            while (i > 0 && entryKeys[i - 1]!! > key) {
+                entryKeys[i] = entryKeys[i - 1]
+                entryElements[i] = entryElements[i - 1]
+                i--
+            }
+            entryKeys[i] = key
+            entryElements[i] = element
+        }
+        val keys = Array(count) { entryKeys[it]!! }
+        val elements = Array(count) { entryElements[it]!! }
+        entryKeys.fill(null, 0, count)
+        entryElements.fill(null, 0, count)
+        return ObjectDictionary(keys, elements)
+    }
+
+    private fun readTimeSpan(): TimeSpan {
+        val value = readRawString()
+        return try {
+            TimeSpan.fromJsonString(value)
+        } catch (e: NumberFormatException) {
+            unsupported()
+        }
+    }
+
+    private fun <T : Enum<T>> readEnum(entries: EnumEntries<T>): T {
+        readStringToken()
+        val value = tokenValue
+        for (entry in entries) {
+            val name = entry.name
+            if (value != null) {
+                if (name == value) {
+                    return entry
+                }
+            } else if (name.length == tokenEnd - tokenStart && matches(tokenStart, name)) {
+                return entry
+            }
+        }
+        unsupported()
+    }
+
+    /**
+     * Read a string value of a field, or null.
+     */
+    private fun readString(key: String): String? = readNullable {
+        readStringToken()
+        val value = tokenValue
+        when {
+            value != null -> interner.internValue(key, value)
+            interner.isInterned(key, tokenEnd - tokenStart) -> sharedPrimitive().content
+            else -> tokenText()
+        }
+    }
+
+    private fun readLong(): Long {
+        readNumber()
+        if (!numberIsLong) {
+            unsupported()
+        }
+        return numberLong
+    }
+
+    private fun readInt(): Int {
+        val value = readLong()
+        if (value < Int.MIN_VALUE || value > Int.MAX_VALUE) {
+            unsupported()
+        }
+        return value.toInt()
+    }
+
+    private fun readDouble(): Double {
+        readNumber()
+        if (!numberIsLong) {
+            return numberDouble
+        }
+        // The text of a long in the canonical form converts as the long (others may not, e.g. -0)
+        return if (numberIsCompact) numberLong.toDouble() else String(chars, numberStart, numberEnd - numberStart).toDouble()
+    }
+
+    /**
+     * Read any value as JSON.
+     * @param key The name of the field of the value, used to intern strings
+     */
+    private fun readElement(key: String?): JsonElement {
+        return when (peek()) {
+            '{' -> readJsonObject()
+            '[' -> {
+                val elements = ArrayList<JsonElement>()
+                readArray { elements.add(readElement(key)) }
+                JsonArray(elements)
+            }
+            '"' -> {
+                readStringToken()
+                val value = tokenValue
+                when {
+                    value != null -> interner.internPrimitive(key, JsonPrimitive(value))
+                    interner.isInterned(key, tokenEnd - tokenStart) -> sharedPrimitive()
+                    else -> JsonPrimitive(tokenText())
+                }
+            }
+            't' -> {
+                readLiteral("true")
+                JsonPrimitive(true)
+            }
+            'f' -> {
+                readLiteral("false")
+                JsonPrimitive(false)
+            }
+            'n' -> {
+                readLiteral("null")
+                JsonNull
+            }
+            else -> {
+                readNumber()
+                numberLiteral()
+            }
+        }
+    }
+
+    /**
+     * The literal the JSON parser creates for the last number: its content is the text of the number,
+     * and it is written in the canonical form (e.g. `1e2` as `100.0`) when the dictionary is encoded.
+     */
+    private fun numberLiteral(): JsonPrimitive {
+        // Most numbers are already in the canonical form: the literal is created without parsing the text again
+        if (numberIsCompact) {
+            return if (numberIsLong) JsonPrimitive(numberLong) else JsonPrimitive(numberDouble)
+        }
+        return Json.parseToJsonElement(String(chars, numberStart, numberEnd - numberStart)).jsonPrimitive
+    }
+
+    private fun readJsonObject(): JsonObject {
+        val entries = LinkedHashMap<String, JsonElement>()
+        readObject { key -> entries[key] = readElement(key) }
+        return JsonObject(entries)
+    }
+
+    private inline fun <T> readList(readElement: () -> T): List<T> {
+        val elements = ArrayList<T>()
+        readArray { elements.add(readElement()) }
+        return elements
+    }
+
+    private inline fun <T> readNullable(read: () -> T): T? {
+        if (peek() == 'n') {
+            readLiteral("null")
+            return null
+        }
+        return read()
+    }
+
+    /**
+     * Read an object.
+     * @param readField Reads the value of a field (called with the interned key)
+     */
+    private inline fun readObject(readField: (String) -> Unit) {
+        expect('{')
+        if (peek() == '}') {
+            expect('}')
+            return
+        }
+        val firstKey = keyCount
+        do {
+            val key = readKey()
+            addKey(firstKey, key)
+            expect(':')
+            readField(key)
+        } while (readSeparator('}'))
+        keyCount = firstKey
+    }
+
+    /**
+     * Read an object key, interned.
+     */
+    private fun readKey(): String {
+        readStringToken()
+        val value = tokenValue
+        if (value != null) {
+            return interner.internString(value)
+        }
+        val set = cacheSet()
+        val cached = keyCache.get(set, chars, tokenStart, tokenEnd)
+        if (cached != null) {
+            sharedCount++
+            sharedBytes += interner.keySize(cached.length)
+            return cached
+        }
+        val key = interner.internString(tokenText())
+        keyCache.put(set, key, key)
+        return key
+    }
+
+    /**
+     * The shared primitive of the last string token, which has no escape sequences.
+     */
+    private fun sharedPrimitive(): JsonPrimitive {
+        val set = cacheSet()
+        val cached = valueCache.get(set, chars, tokenStart, tokenEnd)
+        if (cached != null) {
+            sharedCount++
+            sharedBytes += interner.valueSize(tokenEnd - tokenStart)
+            return cached
+        }
+        val primitive = interner.sharedPrimitive(tokenText())
+        valueCache.put(set, primitive.content, primitive)
+        return primitive
+    }
+
+    /**
+     * The set in the caches of the text of the last string token, hashed from its length and a few characters
+     * (the caches compare the whole text)
+     */
+    private fun cacheSet(): Int {
+        val length = tokenEnd - tokenStart
+        var hash = length
+        if (length > 0) {
+            hash = 31 * hash + chars[tokenStart].code
+            hash = 31 * hash + chars[tokenStart + length / 4].code
+            hash = 31 * hash + chars[tokenStart + length / 2].code
+            hash = 31 * hash + chars[tokenStart + length * 3 / 4].code
+            hash = 31 * hash + chars[tokenEnd - 1].code
+        }
+        hash *= -0x61c88647
+        return hash ushr (32 - CACHE_BITS)
+    }
+
+    /**
+     * The text of the last string token
+     */
+    private fun tokenText(): String = String(chars, tokenStart, tokenEnd - tokenStart)
+
+    /**
+     * Whether the text at an index starts with the given text
+     */
+    private fun matches(index: Int, text: String): Boolean {
+        if (index + text.length > length) {
+            return false
+        }
+        for (i in text.indices) {
+            if (chars[index + i] != text[i]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun matches(index: Int, text: CharArray): Boolean =
+        index + text.size <= length && Arrays.equals(chars, index, index + text.size, text, 0, text.size)
+
+    /**
+     * Add a key to the keys of the objects being read.
+     * Records with a duplicate key are rejected: the JSON parser only keeps the last value.
+     * @param firstKey Index of the first key of the current object
+     */
+    private fun addKey(firstKey: Int, key: String) {
+        for (i in firstKey until keyCount) {
+            if (keys[i] == key) {
+                unsupported()
+            }
+        }
+        if (keyCount == keys.size) {
+            keys = keys.copyOf(keyCount * 2)
+        }
+        keys[keyCount++] = key
+    }
+
+    private inline fun readArray(readElement: () -> Unit) {
+        expect('[')
+        if (peek() == ']') {
+            expect(']')
+            return
+        }
+        do {
+            readElement()
+        } while (readSeparator(']'))
+    }
+
+    /**
+     * Read the separator of the next element, or the end of the object or array.
+     * @return True if there is a next element
+     */
+    private fun readSeparator(end: Char): Boolean {
+        if (peek() == ',') {
+            expect(',')
+            return true
+        }
+        expect(end)
+        return false
+    }
+
+    /**
+     * Read a string token, decoding escape sequences.
+     */
+    private fun readRawString(): String {
+        readStringToken()
+        return tokenValue ?: tokenText()
+    }
+
+    /**
+     * Read a string token (see [tokenStart]), without creating its value unless it has escape sequences.
+     */
+    private fun readStringToken() {
+        val chars = chars
+        val length = length
+        skipWhitespace()
+        if (position >= length || chars[position] != '"') {
+            unsupported()
+        }
+        val start = position + 1
+        var i = start
+        // Most strings have neither escape sequences nor control characters: their text is their compact JSON
+        while (i < length) {
+            val c = chars[i]
+            if (c == '"' || c == '\\' || c < ' ') {
+                break
+            }
+            i++
+        }
+        if (i >= length) {
+            unsupported()
+        }
+        tokenStart = start
+        if (chars[i] == '"') {
+            tokenEnd = i
+            tokenValue = null
+            position = i + 1
+            if (rewritten) {
+                out.append(chars, start - 1, position - start + 1)
+            }
+            return
+        }
+        // Whether the escape sequences are written as the JSON encoder writes them
+        var compact = true
+        val builder = StringBuilder(i - start + 16)
+        builder.append(chars, start, i - start)
+        while (true) {
+            if (i >= length) {
+                unsupported()
+            }
+            val c = chars[i++]
+            if (c == '"') {
+                break
+            }
+            if (c != '\\') {
+                // Control characters are escaped by the encoder
+                compact = compact && c >= ' '
+                builder.append(c)
+                continue
+            }
+            if (i >= length) {
+                unsupported()
+            }
+            when (chars[i++]) {
+                '"' -> builder.append('"')
+                '\\' -> builder.append('\\')
+                '/' -> {
+                    builder.append('/')
+                    compact = false
+                }
+                'b' -> builder.append('\b')
+                'f' -> builder.append('\u000C')
+                'n' -> builder.append('\n')
+                'r' -> builder.append('\r')
+                't' -> builder.append('\t')
+                'u' -> {
+                    if (i + 4 > length) {
+                        unsupported()
+                    }
+                    var code = 0
+                    for (j in i until i + 4) {
+                        val digit = Character.digit(chars[j], 16)
+                        if (digit < 0) {
+                            unsupported()
+                        }
+                        code = code * 16 + digit
+                    }
+                    builder.append(code.toChar())
+                    // Only control characters without a short escape are escaped as unicode, in lower case
+                    compact = compact && code < 0x20 && matches(i - 2, CONTROL_ESCAPES[code])
+                    i += 4
+                }
+                else -> unsupported()
+            }
+        }
+        val value = builder.toString()
+        tokenEnd = i - 1
+        tokenValue = value
+        if (!compact) {
+            rewriteFrom(start - 1)
+            position = i
+            writeString(value)
+            return
+        }
+        position = i
+        if (rewritten) {
+            out.append(chars, start - 1, position - start + 1)
+        }
+    }
+
+    /**
+     * Read a number token (see [numberStart]).
+     * The number is written as the JSON encoder writes a number literal: as a long if possible, otherwise as a double.
+     */
+    private fun readNumber() {
+        skipWhitespace()
+        val start = position
+        while (position < length && isNumberChar(chars[position])) {
+            position++
+        }
+        if (position == start || chars[start] == '+') {
+            unsupported()
+        }
+        numberStart = start
+        numberEnd = position
+        if (readCompactLong(start, position)) {
+            numberIsLong = true
+            numberIsCompact = true
+            if (rewritten) {
+                out.append(chars, start, position - start)
+            }
+            return
+        }
+        val text = String(chars, start, position - start)
+        val long = text.toLongOrNull()
+        val compact = if (long != null) {
+            numberIsLong = true
+            numberLong = long
+            long.toString()
+        } else {
+            numberIsLong = false
+            val double = text.toDoubleOrNull()
+            if (double == null || !double.isFinite()) {
+                unsupported()
+            }
+            numberDouble = double
+            double.toString()
+        }
+        numberIsCompact = compact == text
+        // Unsigned longs beyond the range of a long are written as is
+        val written = if (long == null && text.toULongOrNull() != null) text else compact
+        if (written != text) {
+            rewriteFrom(start)
+        }
+        if (rewritten) {
+            out.append(written)
+        }
+    }
+
+    /**
+     * Read a long written as the encoder writes it, into [numberLong]: an optional minus sign and up to 18 digits,
+     * without leading zeros (or `0`)
+     * @return False if the number is not such a long
+     */
+    private fun readCompactLong(start: Int, end: Int): Boolean {
+        val digits = if (chars[start] == '-') start + 1 else start
+        if (digits == end || end - digits > 18 || chars[digits] == '0' && (end - digits > 1 || digits > start)) {
+            return false
+        }
+        var value = 0L
+        for (i in digits until end) {
+            val c = chars[i]
+            if (c !in '0'..'9') {
+                return false
+            }
+            value = value * 10 + (c - '0')
+        }
+        numberLong = if (digits > start) -value else value
+        return true
+    }
+
+    private fun readLiteral(literal: String) {
+        skipWhitespace()
+        if (!matches(position, literal)) {
+            unsupported()
+        }
+        if (rewritten) {
+            out.append(literal)
+        }
+        position += literal.length
+    }
+
+    private fun expect(c: Char) {
+        skipWhitespace()
+        if (position >= length || chars[position] != c) {
+            unsupported()
+        }
+        if (rewritten) {
+            out.append(c)
+        }
+        position++
+    }
+
+    /**
+     * The next character that is not whitespace (or 0 at the end of the text)
+     */
+    private fun peek(): Char {
+        skipWhitespace()
+        return if (position < length) chars[position] else '\u0000'
+    }
+
+    private fun skipWhitespace() {
+        val start = position
+        while (position < length) {
+            val c = chars[position]
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break
+            }
+            position++
+        }
+        if (position != start) {
+            // Whitespace is not written
+            rewriteFrom(start)
+        }
+    }
+
+    /**
+     * Start writing the compact JSON, as the text differs from it at an index (if it did not already).
+     * The text before the index was read as is.
+     */
+    private fun rewriteFrom(index: Int) {
+        if (!rewritten) {
+            rewritten = true
+            out.append(chars, 0, index)
+        }
+    }
+
+    /**
+     * Write a string with the escaping of the JSON encoder (only quotes, backslashes and control characters)
+     */
+    private fun writeString(value: String) {
+        out.append('"')
+        var last = 0
+        for (i in value.indices) {
+            val c = value[i]
+            val escape = when {
+                c == '"' -> "\\\""
+                c == '\\' -> "\\\\"
+                c < ' ' -> CONTROL_ESCAPES[c.code]
+                else -> continue
+            }
+            out.append(value, last, i).append(escape)
+            last = i + 1
+        }
+        out.append(value, last, value.length).append('"')
+    }
+
+    private fun isNumberChar(c: Char): Boolean = c in '0'..'9' || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'
+}
@@ -10,7 +10,6 @@ import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.SerializationException
 import kotlinx.serialization.json.Json
 import kotlinx.serialization.json.JsonElement
-import kotlinx.serialization.json.JsonObject
 import kotlinx.serialization.json.decodeFromJsonElement
 
 class TelemetryFactory {
@@ -18,49 +17,68 @@ class TelemetryFactory {
     // We need to concatenate them before parsing
     private val currentValue: StringBuilder = StringBuilder()
 
-    fun tryCreateFromDebugOutputLog(output: String): TelemetryItem? {
-        val openTelemetryLogPrefix = "OpenTelemetry {\""
+    // Tracks where the JSON object ends, so that we only parse once the record is complete
+    private val scanner = JsonRecordScanner()
 
+    /**
+     * Shares repeated strings between the records of the session
+     */
+    val interner = TelemetryInterner()
+
+    private val decoder = TelemetryDecoder(interner)
+
+    /**
+     * Append a debug output line to the current record.
+     * Not thread safe: lines must be passed in output order from a single thread.
+     * @return The JSON of the record if it is now complete, otherwise null
+     */
+    fun tryReadRecord(output: String): String? {
         val value = output.trimEnd()
 
-        if (currentValue.isEmpty() && !value.startsWith(openTelemetryLogPrefix)) {
+        if (currentValue.isEmpty() && !value.startsWith(OPEN_TELEMETRY_LOG_PREFIX)) {
             // Not a telemetry log
             return null
         }
 
         currentValue.append(value)
 
-        val json = currentValue.toString().substring(openTelemetryLogPrefix.length - 2)
-        val jsonElement = tryParseJson(json)
-            ?: return null  // Not a complete telemetry log
+        if (!scanner.scan(currentValue, JSON_START)) {
+            // Not a complete telemetry log
+            return null
+        }
 
+        val json = currentValue.substring(JSON_START, scanner.endIndex)
         currentValue.clear()
+        scanner.reset()
+        return json
+    }
 
+    /**
+     * Create a telemetry item from the JSON of a complete record.
+     * Thread safe: records can be parsed in parallel.
+     */
+    fun create(json: String): TelemetryItem? {
         return try {
+            // Records of the expected shape are decoded in a single pass, without building the JSON tree
+            decoder.decode(json)?.let { return it }
+            // Otherwise the tree is parsed once: both the model and the compact JSON are created from it
+            // The JSON is re-encoded so that escaping is consistent for searching (pretty JSON is created on demand)
+            val jsonElement = interner.intern(Json.parseToJsonElement(json))
             val telemetry = Json.decodeFromJsonElement<Telemetry>(jsonElement)
-            return TelemetryItem(formatJson(json), telemetry)
+            return TelemetryItem(Json.encodeToString(JsonElement.serializer(), jsonElement), telemetry)
         } catch (e: SerializationException) {
             val logger = Logger.getInstance(TelemetryFactory::class.java)
             logger.error("Failed to parse telemetry log", e)
-            currentValue.clear()
             return null
         }
     }
 
-    private fun formatJson(json: String): String {
-        val prettyJson = Json {
-            prettyPrint = true
-            prettyPrintIndent = "  "
-        }
-        val obj = Json.decodeFromString<JsonObject>(json)
-        return prettyJson.encodeToString(JsonObject.serializer(), obj)
-    }
+    companion object {
+        private const val OPEN_TELEMETRY_LOG_PREFIX = "OpenTelemetry {\""
 
-    private fun tryParseJson(json: String): JsonElement? {
-        return try {
-            return Json.decodeFromString<JsonElement>(json)
-        } catch (e: SerializationException) {
-            return null
-        }
+        /**
+         * Index of the opening brace of the JSON object in a telemetry log
+         */
+        private const val JSON_START = OPEN_TELEMETRY_LOG_PREFIX.length - 2
     }
-}
\ No newline at end of file
+}
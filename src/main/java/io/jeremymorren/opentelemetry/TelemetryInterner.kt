@@ -0,0 +1,246 @@
+package io.jeremymorren.opentelemetry
+
+import kotlinx.serialization.json.JsonArray
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.JsonPrimitive
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Shares the strings that repeat across the records of a session, before the records are decoded.
+ *
+ * The JSON tree of a record is rebuilt with:
+ * - interned object keys (e.g. `url.path`, `db.system`)
+ * - interned short string values (e.g. source names, categories, HTTP methods), except for fields that are unique
+ *   to a record (IDs and timestamps)
+ * - a shared instance of the `resource` object, which is usually identical for all records of a process
+ *
+ * The models decoded from the tree reference the shared strings. The streaming [TelemetryDecoder] interns the
+ * tokens it reads with the same rules.
+ * Thread safe: records can be interned in parallel.
+ */
+class TelemetryInterner {
+    private val strings = ConcurrentHashMap<String, String>()
+    private val primitives = ConcurrentHashMap<String, JsonPrimitive>()
+    private val resources = ConcurrentHashMap<JsonObject, JsonObject>()
+
+    // Counted by all the threads that intern records
+    private val internedCount = LongAdder()
+    private val savedBytes = LongAdder()
+
+    /**
+     * Number of strings and resource objects replaced by a shared instance
+     */
+    val interned: Long get() = internedCount.sum()
+
+    /**
+     * Estimated number of heap bytes saved by sharing
+     */
+    val bytesSaved: Long get() = savedBytes.sum()
+
+    /**
+     * Intern the JSON tree of a record.
+     */
+    fun intern(record: JsonElement): JsonElement {
+        if (record !is JsonObject) {
+            return record
+        }
+        return JsonObject(internEntries(record) { key, value ->
+            if (key == RESOURCE_KEY && value is JsonObject) internResourceTree(value) else internElement(key, value)
+        })
+    }
+
+    /**
+     * Intern the string value of a field.
+     * @param key The name of the field
+     */
+    fun internValue(key: String?, value: String): String {
+        if (!isInterned(key, value.length)) {
+            return value
+        }
+        return sharedPrimitive(value).content
+    }
+
+    /**
+     * Intern a primitive value of a field.
+     * @param key The name of the field
+     */
+    fun internPrimitive(key: String?, element: JsonPrimitive): JsonPrimitive {
+        if (!element.isString || !isInterned(key, element.content.length)) {
+            return element
+        }
+        return internPrimitive(element)
+    }
+
+    /**
+     * Intern a resource object, whose fields are already interned.
+     */
+    fun internResource(resource: JsonObject): JsonObject {
+        val shared = resources[resource]
+        if (shared != null) {
+            record(estimateSize(resource))
+            return shared
+        }
+        if (resources.size >= MAX_ENTRIES) {
+            return resource
+        }
+        return resources.putIfAbsent(resource, resource) ?: resource
+    }
+
+    /**
+     * Intern an object key.
+     */
+    fun internString(value: String): String {
+        val shared = strings[value]
+        if (shared != null) {
+            if (shared !== value) {
+                record(stringSize(value))
+            }
+            return shared
+        }
+        if (strings.size >= MAX_ENTRIES) {
+            return value
+        }
+        return strings.putIfAbsent(value, value) ?: value
+    }
+
+    /**
+     * Whether the string values of a field are interned
+     * @param key The name of the field
+     * @param length The length of the value
+     */
+    internal fun isInterned(key: String?, length: Int): Boolean = length <= MAX_VALUE_LENGTH && !isUniqueKey(key)
+
+    /**
+     * The shared primitive of a string value (of a field whose values are interned).
+     */
+    internal fun sharedPrimitive(value: String): JsonPrimitive {
+        val shared = primitives[value]
+        if (shared != null) {
+            record(stringSize(value) + PRIMITIVE_OVERHEAD)
+            return shared
+        }
+        val primitive = JsonPrimitive(value)
+        if (primitives.size >= MAX_ENTRIES) {
+            return primitive
+        }
+        return primitives.putIfAbsent(value, primitive) ?: primitive
+    }
+
+    /**
+     * Count shared instances found without a lookup (e.g. in the cache of a decoder).
+     * @param bytes The estimated heap bytes they saved (see [keySize], [valueSize] and [resourceSize])
+     */
+    internal fun recordShared(count: Int, bytes: Long) {
+        if (count == 0) {
+            return
+        }
+        internedCount.add(count.toLong())
+        savedBytes.add(bytes)
+    }
+
+    /**
+     * Estimated heap bytes saved by sharing an object key
+     */
+    internal fun keySize(length: Int): Long = STRING_OVERHEAD + length
+
+    /**
+     * Estimated heap bytes saved by sharing a string value
+     */
+    internal fun valueSize(length: Int): Long = STRING_OVERHEAD + length + PRIMITIVE_OVERHEAD
+
+    /**
+     * Estimated heap bytes saved by sharing a resource object
+     */
+    internal fun resourceSize(resource: JsonObject): Long = estimateSize(resource)
+
+    private fun internElement(key: String?, element: JsonElement): JsonElement {
+        return when (element) {
+            is JsonObject -> JsonObject(internEntries(element, ::internElement))
+            is JsonArray -> JsonArray(element.map { internElement(key, it) })
+            is JsonPrimitive -> internPrimitive(key, element)
+        }
+    }
+
+    private inline fun internEntries(
+        element: JsonObject,
+        intern: (String, JsonElement) -> JsonElement
+    ): Map<String, JsonElement> {
+        val entries = LinkedHashMap<String, JsonElement>(element.size * 2)
+        for ((key, value) in element) {
+            val internedKey = internString(key)
+            entries[internedKey] = intern(internedKey, value)
+        }
+        return entries
+    }
+
+    private fun internResourceTree(resource: JsonObject): JsonObject {
+        val shared = resources[resource]
+        if (shared != null) {
+            record(estimateSize(resource))
+            return shared
+        }
+        // The first occurrence is interned field by field, then shared as a whole
+        return internResource(JsonObject(internEntries(resource, ::internElement)))
+    }
+
+    private fun internPrimitive(value: JsonPrimitive): JsonPrimitive {
+        val content = value.content
+        val shared = primitives[content]
+        if (shared != null) {
+            record(stringSize(content) + PRIMITIVE_OVERHEAD)
+            return shared
+        }
+        if (primitives.size >= MAX_ENTRIES) {
+            return value
+        }
+        return primitives.putIfAbsent(content, value) ?: value
+    }
+
+    private fun record(bytes: Long) {
+        internedCount.increment()
+        savedBytes.add(bytes)
+    }
+
+    override fun toString(): String = "$interned strings and resources shared, ~${bytesSaved / 1024} KB saved"
+
+    private companion object {
+        const val RESOURCE_KEY = "resource"
+
+        /**
+         * Longer strings (messages, queries, URLs) are rarely repeated
+         */
+        const val MAX_VALUE_LENGTH = 64
+
+        /**
+         * Maximum number of shared instances of each kind, so that high cardinality values cannot grow the tables
+         */
+        const val MAX_ENTRIES = 65_536
+
+        /**
+         * Estimated size of a string object and its array, without the characters
+         */
+        const val STRING_OVERHEAD = 40L
+        const val PRIMITIVE_OVERHEAD = 24L
+        const val ENTRY_OVERHEAD = 32L
+
+        /**
+         * Whether the values of a field are unique to a record
+         * (a string switch, cheaper than a set lookup for each value)
+         */
+        fun isUniqueKey(key: String?): Boolean = when (key) {
+            "rootId", "traceId", "spanId", "parentSpanId",
+            "startTime", "endTime", "timestamp", "duration" -> true
+            else -> false
+        }
+
+        fun stringSize(value: String): Long = STRING_OVERHEAD + value.length
+
+        fun estimateSize(element: JsonElement): Long = when (element) {
+            is JsonObject -> element.entries.sumOf { ENTRY_OVERHEAD + stringSize(it.key) + estimateSize(it.value) }
+            is JsonArray -> element.sumOf { ENTRY_OVERHEAD + estimateSize(it) }
+            is JsonPrimitive -> PRIMITIVE_OVERHEAD + stringSize(element.content)
+        }
+    }
+}
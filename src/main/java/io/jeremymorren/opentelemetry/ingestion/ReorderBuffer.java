@@ -0,0 +1,60 @@
+package io.jeremymorren.opentelemetry.ingestion;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Consumer;
+
+/**
+ * Restores sequence order of results completed out of order by a worker pool.
+ * <p>
+ * Results are buffered in a ring of {@code capacity} slots until all results with a lower sequence number have
+ * completed. Callers must ensure no more than {@code capacity} sequence numbers are in flight at once.
+ */
+public class ReorderBuffer<T> {
+    /**
+     * Marker for a sequence number that completed without a result
+     */
+    private static final Object EMPTY = new Object();
+
+    @NotNull
+    private final Object[] slots;
+    @NotNull
+    private final Consumer<T> consumer;
+    private long nextSequence;
+
+    /**
+     * @param capacity Maximum number of sequence numbers in flight
+     * @param consumer Receives results in sequence order (called while holding the buffer lock)
+     */
+    public ReorderBuffer(int capacity, @NotNull Consumer<T> consumer) {
+        this.slots = new Object[capacity];
+        this.consumer = consumer;
+    }
+
+    /**
+     * Record the result for a sequence number, and release all results that are now in order.
+     * @param value The result, or null if the sequence number produced nothing
+     * @return The number of sequence numbers released
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int complete(long sequence, @Nullable T value) {
+        slots[slot(sequence)] = value != null ? value : EMPTY;
+
+        int released = 0;
+        Object next;
+        while ((next = slots[slot(nextSequence)]) != null) {
+            slots[slot(nextSequence)] = null;
+            nextSequence++;
+            released++;
+            if (next != EMPTY) {
+                consumer.accept((T) next);
+            }
+        }
+        return released;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % slots.length);
+    }
+}
@@ -0,0 +1,244 @@
+package io.jeremymorren.opentelemetry.ingestion;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import io.jeremymorren.opentelemetry.TelemetryFactory;
+import io.jeremymorren.opentelemetry.TelemetryInterner;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import io.jeremymorren.opentelemetry.store.PayloadStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Moves telemetry parsing off the debugger output thread.
+ * <p>
+ * Output lines are put in a bounded queue and assembled into records by a dedicated worker.
+ * Each record gets an ingest sequence number and is parsed on a small worker pool;
+ * results are put back in output order by a {@link ReorderBuffer},
+ * and handed to the consumer on the EDT in batches, at most every {@link #PUBLISH_INTERVAL_MS} milliseconds.
+ * <p>
+ * Once {@link #stop()} is called (when the debug session ends), output is no longer accepted,
+ * records still in flight are discarded and nothing more is published.
+ */
+public class TelemetryIngestionPipeline {
+    private static final Logger LOG = Logger.getInstance(TelemetryIngestionPipeline.class);
+
+    /**
+     * Maximum number of output lines waiting to be parsed
+     */
+    private static final int QUEUE_CAPACITY = 10_000;
+
+    /**
+     * Minimum delay between two batches published to the UI
+     */
+    private static final long PUBLISH_INTERVAL_MS = 50;
+
+    /**
+     * Number of threads parsing records
+     */
+    private static final int PARSE_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    /**
+     * Maximum number of records being parsed or waiting to be put back in order
+     */
+    private static final int MAX_RECORDS_IN_FLIGHT = 1_024;
+
+    @NotNull
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    @NotNull
+    private final ExecutorService recordWorker =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("OpenTelemetry Ingestion", 1);
+    @NotNull
+    private final ExecutorService parsePool =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("OpenTelemetry Parser", PARSE_THREADS);
+    @NotNull
+    private final Semaphore recordsInFlight = new Semaphore(MAX_RECORDS_IN_FLIGHT);
+    @NotNull
+    private final ReorderBuffer<TelemetryItem> reorderBuffer =
+            new ReorderBuffer<>(MAX_RECORDS_IN_FLIGHT, this::enqueueForPublish);
+    @NotNull
+    private final TelemetryFactory telemetryFactory = new TelemetryFactory();
+    @NotNull
+    private final Consumer<List<TelemetryItem>> consumer;
+    @Nullable
+    private final PayloadStore payloadStore;
+
+    /**
+     * Sequence number of the next record. Only accessed by the record worker.
+     */
+    private long nextSequence;
+
+    /**
+     * True while a drain task is scheduled or running on the record worker
+     */
+    @NotNull
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * True while a publish of the pending batch is scheduled
+     */
+    @NotNull
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
+    @NotNull
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    @NotNull
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    /**
+     * Parsed telemetry waiting to be published. Guarded by {@code this}.
+     */
+    @NotNull
+    private List<TelemetryItem> pending = new ArrayList<>();
+
+    /**
+     * @param consumer Receives batches of parsed telemetry (in output order) on the EDT
+     * @param payloadStore If not null, the JSON of parsed telemetry is moved to this store before it is published
+     */
+    public TelemetryIngestionPipeline(@NotNull Consumer<List<TelemetryItem>> consumer, @Nullable PayloadStore payloadStore) {
+        this.consumer = consumer;
+        this.payloadStore = payloadStore;
+    }
+
+    /**
+     * Queue a debugger output line. Never blocks: if the queue is full, the line is dropped.
+     * @return True if the line was queued
+     */
+    public boolean offer(@NotNull String output) {
+        if (stopped.get()) {
+            return false;
+        }
+        if (!queue.offer(output)) {
+            if (droppedCount.getAndIncrement() == 0) {
+                LOG.warn("OpenTelemetry ingestion queue is full, dropping debug output");
+            }
+            return false;
+        }
+        if (draining.compareAndSet(false, true)) {
+            recordWorker.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * Stop the pipeline: queued output is discarded, and parsed telemetry is no longer published.
+     * Can be called from any thread.
+     */
+    public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        queue.clear();
+        synchronized (this) {
+            pending = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Number of output lines dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * The interner of the parsed records (for statistics).
+     */
+    @NotNull
+    public TelemetryInterner getInterner() {
+        return telemetryFactory.getInterner();
+    }
+
+    private void drain() {
+        do {
+            String output;
+            while (!stopped.get() && (output = queue.poll()) != null) {
+                String record;
+                try {
+                    record = telemetryFactory.tryReadRecord(output);
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to process debug output", e);
+                    continue;
+                }
+                if (record != null && !submit(record)) {
+                    draining.set(false);
+                    return;
+                }
+            }
+            draining.set(false);
+            // A line may have been queued after the last poll but before the flag was cleared
+        } while (!stopped.get() && !queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    /**
+     * Parse a record on the parse pool. Blocks the record worker while too many records are in flight.
+     * @return False if the worker was interrupted
+     */
+    private boolean submit(@NotNull String record) {
+        try {
+            recordsInFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        long sequence = nextSequence++;
+        parsePool.execute(() -> {
+            TelemetryItem telemetry = null;
+            try {
+                if (stopped.get()) {
+                    return;
+                }
+                telemetry = telemetryFactory.create(record);
+                if (telemetry != null && payloadStore != null) {
+                    telemetry.spill(payloadStore);
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Failed to parse telemetry log", e);
+            } finally {
+                // Permits are returned once records leave the reorder buffer, which bounds its window
+                recordsInFlight.release(reorderBuffer.complete(sequence, telemetry));
+            }
+        });
+        return true;
+    }
+
+    private void enqueueForPublish(@NotNull TelemetryItem telemetry) {
+        if (stopped.get()) {
+            return;
+        }
+        synchronized (this) {
+            pending.add(telemetry);
+        }
+        if (publishScheduled.compareAndSet(false, true)) {
+            AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                    () -> ApplicationManager.getApplication().invokeLater(this::publish),
+                    PUBLISH_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publish() {
+        List<TelemetryItem> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+            publishScheduled.set(false);
+        }
+        if (!batch.isEmpty() && !stopped.get()) {
+            consumer.accept(batch);
+        }
+    }
+}
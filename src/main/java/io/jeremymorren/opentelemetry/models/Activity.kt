@@ -3,13 +3,12 @@
 
 package io.jeremymorren.opentelemetry.models
 
-import kotlinx.datetime.Instant
 import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.Serializable
+import kotlinx.serialization.Transient
 import kotlinx.serialization.json.JsonIgnoreUnknownKeys
 import java.net.URI
 import java.util.*
-import kotlin.time.toJavaDuration
 
 @Serializable
 @JsonIgnoreUnknownKeys
@@ -31,39 +30,47 @@ data class Activity(
     val statusDescription: String? = null,
     val events: List<ActivityEvent>? = null,
 ) {
+    // The values derived from the tags are computed once, when the activity is decoded
+
+    /**
+     * The start time in nanoseconds since the epoch ([IsoTimestamp.NONE] if unknown).
+     */
+    @Transient
+    val startTimeNanos: Long = IsoTimestamp.parse(startTime)
+
     /**
      * The type of the activity.
      */
-    val type: TelemetryType
-        get() =
-            if (kind == ActivityKind.Server && tags != null && tags.containsKey("url.path")) TelemetryType.Request
-            else if (kind == ActivityKind.Client) TelemetryType.Dependency
-            else TelemetryType.Activity
+    @Transient
+    val type: TelemetryType =
+        if (kind == ActivityKind.Server && tags != null && tags.containsKey("url.path")) TelemetryType.Request
+        else if (kind == ActivityKind.Client) TelemetryType.Dependency
+        else TelemetryType.Activity
 
     /**
      * The dependency type (HTTP or SQL) if the activity is a dependency.
      */
-    val dependencyType: DependencyType?
-        get() =
-            if (kind == ActivityKind.Client)
-            {
-                if (tags == null) null
-                else if (tags.containsKey("http.request.method")) DependencyType.HTTP
-                else if (tags.containsKey("db.system")) DependencyType.SQL
-                else null
-            }
-            else {
-                null
-            }
+    @Transient
+    val dependencyType: DependencyType? =
+        if (kind == ActivityKind.Client)
+        {
+            if (tags == null) null
+            else if (tags.containsKey("http.request.method")) DependencyType.HTTP
+            else if (tags.containsKey("db.system")) DependencyType.SQL
+            else null
+        }
+        else {
+            null
+        }
 
     /**
      * True if the activity is an error.
      */
-
-    val isError: Boolean
-        get() = status == ActivityStatusCode.Error ||
-                tags?.containsKey("error.type") == true ||
-                tags?.getString("otel.status_code") == "ERROR"
+    @Transient
+    val isError: Boolean =
+        status == ActivityStatusCode.Error ||
+        tags?.containsKey("error.type") == true ||
+        tags?.getString("otel.status_code") == "ERROR"
 
     /**
      * The error display string.
@@ -82,7 +89,7 @@ data class Activity(
             if (dependencyType == null) {
                 return type.name
             }
-            return "${type.name} - ${dependencyType!!.name}"
+            return "${type.name} - ${dependencyType.name}"
         }
 
     /**
@@ -152,21 +159,8 @@ data class Activity(
     /**
      * Gets the time spent in the database (i.e. time between start of activity and first response received)
      */
-    val dbQueryTime: TimeSpan? get() {
-        if (events == null || startTime == null) {
-            return null
-        }
-        val startTs = Instant.parse(startTime)
-        // Find the event called "received-first-response"
-        for (event in events) {
-            val eventTs = event.getTimestamp()
-            if (event.name == "received-first-response" && eventTs != null) {
-                val duration = eventTs - startTs
-                return TimeSpan.fromDuration(duration.toJavaDuration())
-            }
-        }
-        return null
-    }
+    @Transient
+    val dbQueryTime: TimeSpan? = computeDbQueryTime()
 
     /**
      * Gets the time spent reading from the database (i.e. time between first response received and end of activity)
@@ -175,7 +169,7 @@ data class Activity(
         if (dbQueryTime == null || duration == null) {
             return null
         }
-        return duration - dbQueryTime!!
+        return duration - dbQueryTime
     }
 
     /**
@@ -184,7 +178,7 @@ data class Activity(
     val detail: String? get() {
         val parts = mutableListOf<String>()
         if (dependencyType != null) {
-            parts.add(dependencyType!!.name)
+            parts.add(dependencyType.name)
         }
         //Show the source if the type is activity (i.e. not request or dependency)
         if (source != null && type == TelemetryType.Activity) {
@@ -230,6 +224,20 @@ data class Activity(
         }
         return str
     }
+
+    private fun computeDbQueryTime(): TimeSpan? {
+        if (events == null || startTimeNanos == IsoTimestamp.NONE) {
+            return null
+        }
+        // Find the event called "received-first-response"
+        for (event in events) {
+            if (event.name != "received-first-response" || event.timestampNanos == IsoTimestamp.NONE) {
+                continue
+            }
+            return TimeSpan(event.timestampNanos - startTimeNanos)
+        }
+        return null
+    }
 }
 
 @Serializable
@@ -250,7 +258,11 @@ data class ActivityEvent(
     val attributes: ObjectDictionary? = null,
 )
 {
-    fun getTimestamp(): Instant? = timestamp?.let { Instant.parse(it) }
+    /**
+     * The timestamp in nanoseconds since the epoch ([IsoTimestamp.NONE] if unknown).
+     */
+    @Transient
+    val timestampNanos: Long = IsoTimestamp.parse(timestamp)
 }
 
 /**
@@ -0,0 +1,17 @@
+package io.jeremymorren.opentelemetry.models
+
+/**
+ * Style of the detail of a telemetry item in the table (mapped to colours by the renderer).
+ * @property Plain No particular style (e.g. metrics).
+ * @property Default An activity or log message without a notable status.
+ * @property Warning A warning log message.
+ * @property Error A failed activity or an error log message.
+ * @property Critical A critical log message.
+ */
+enum class DetailStyle {
+    Plain,
+    Default,
+    Warning,
+    Error,
+    Critical
+}
@@ -0,0 +1,164 @@
+package io.jeremymorren.opentelemetry.models
+
+import java.time.Instant
+import java.time.format.DateTimeParseException
+
+/**
+ * Parses ISO-8601 timestamps to nanoseconds since the epoch.
+ *
+ * The exporter writes timestamps with the .NET round-trip layout (`yyyy-MM-ddTHH:mm:ss.fffffffZ`, or with an
+ * offset such as `+02:00`): this layout is parsed in place, without allocation.
+ * Other timestamps are parsed by [Instant.parse].
+ */
+object IsoTimestamp {
+    /**
+     * Value of a missing or invalid timestamp
+     */
+    const val NONE = Long.MIN_VALUE
+
+    private const val NANOS_PER_SECOND = 1_000_000_000L
+    private const val SECONDS_PER_DAY = 86_400L
+
+    /**
+     * Years whose timestamps fit in a long of nanoseconds
+     */
+    private const val MIN_YEAR = 1678
+    private const val MAX_YEAR = 2261
+
+    /**
+     * Parse a timestamp.
+     * @return The number of nanoseconds since the epoch, or [NONE] if the timestamp is null or invalid
+     */
+    fun parse(text: String?): Long {
+        if (text == null) {
+            return NONE
+        }
+        val nanos = parseRoundTrip(text)
+        return if (nanos != NONE) nanos else parseGeneral(text)
+    }
+
+    /**
+     * Convert nanoseconds since the epoch to an instant.
+     * @return The instant, or null for [NONE]
+     */
+    fun toInstant(nanos: Long): Instant? = if (nanos == NONE) null else Instant.ofEpochSecond(0, nanos)
+
+    /**
+     * Parse the round-trip layout.
+     * @return The number of nanoseconds since the epoch, or [NONE] if the timestamp does not have this layout
+     */
+    private fun parseRoundTrip(text: String): Long {
+        val length = text.length
+        if (length < 20 || text[4] != '-' || text[7] != '-' || text[10] != 'T' || text[13] != ':' || text[16] != ':') {
+            return NONE
+        }
+        val year = digits(text, 0, 4)
+        val month = digits(text, 5, 2)
+        val day = digits(text, 8, 2)
+        val hour = digits(text, 11, 2)
+        val minute = digits(text, 14, 2)
+        val second = digits(text, 17, 2)
+        if (year < MIN_YEAR || year > MAX_YEAR || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) ||
+            hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return NONE
+        }
+
+        // Fraction of second (up to 9 digits, .NET writes 7)
+        var i = 19
+        var fraction = 0L
+        if (text[i] == '.') {
+            val start = ++i
+            while (i < length && text[i] in '0'..'9') {
+                if (i - start == 9) {
+                    return NONE
+                }
+                fraction = fraction * 10 + (text[i] - '0')
+                i++
+            }
+            if (i == start) {
+                return NONE
+            }
+            for (k in i - start until 9) {
+                fraction *= 10
+            }
+        }
+
+        // Offset: Z or ±HH:mm
+        if (i >= length) {
+            return NONE
+        }
+        val offsetSeconds: Int
+        when (text[i]) {
+            'Z' -> {
+                offsetSeconds = 0
+                i++
+            }
+            '+', '-' -> {
+                if (length - i != 6 || text[i + 3] != ':') {
+                    return NONE
+                }
+                val offsetHours = digits(text, i + 1, 2)
+                val offsetMinutes = digits(text, i + 4, 2)
+                if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                    return NONE
+                }
+                val offset = offsetHours * 3600 + offsetMinutes * 60
+                offsetSeconds = if (text[i] == '-') -offset else offset
+                i += 6
+            }
+            else -> return NONE
+        }
+        if (i != length) {
+            return NONE
+        }
+
+        val seconds = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second - offsetSeconds
+        return seconds * NANOS_PER_SECOND + fraction
+    }
+
+    private fun parseGeneral(text: String): Long {
+        return try {
+            val instant = Instant.parse(text)
+            Math.addExact(Math.multiplyExact(instant.epochSecond, NANOS_PER_SECOND), instant.nano.toLong())
+        } catch (e: DateTimeParseException) {
+            NONE
+        } catch (e: ArithmeticException) {
+            NONE
+        }
+    }
+
+    /**
+     * Parse a fixed number of decimal digits.
+     * @return The value, or -1 if a character is not a digit
+     */
+    private fun digits(text: String, start: Int, count: Int): Int {
+        var value = 0
+        for (i in start until start + count) {
+            val c = text[i]
+            if (c !in '0'..'9') {
+                return -1
+            }
+            value = value * 10 + (c - '0')
+        }
+        return value
+    }
+
+    private fun daysInMonth(year: Int, month: Int): Int = when (month) {
+        2 -> if (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) 29 else 28
+        4, 6, 9, 11 -> 30
+        else -> 31
+    }
+
+    /**
+     * The number of days since 1970-01-01 of a date of the proleptic Gregorian calendar (for years after 0).
+     */
+    private fun epochDay(year: Int, month: Int, day: Int): Long {
+        // Years start in March, so that the leap day is the last day of the year
+        val y = if (month <= 2) year - 1 else year
+        val era = y / 400
+        val yearOfEra = y - era * 400
+        val dayOfYear = (153 * (if (month > 2) month - 3 else month + 9) + 2) / 5 + day - 1
+        val dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear
+        return era * 146_097L + dayOfEra - 719_468L
+    }
+}
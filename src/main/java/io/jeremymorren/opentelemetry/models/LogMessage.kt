@@ -5,6 +5,7 @@ package io.jeremymorren.opentelemetry.models
 
 import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.Serializable
+import kotlinx.serialization.Transient
 import kotlinx.serialization.json.JsonIgnoreUnknownKeys
 
 @Serializable
@@ -22,6 +23,12 @@ data class LogMessage(
     val eventId: EventId? = null
 )
 {
+    /**
+     * The timestamp in nanoseconds since the epoch ([IsoTimestamp.NONE] if unknown).
+     */
+    @Transient
+    val timestampNanos: Long = IsoTimestamp.parse(timestamp)
+
     /**
      * The telemetry type (determined from the log message).
      */
@@ -5,9 +5,8 @@ package io.jeremymorren.opentelemetry.models
 
 import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.Serializable
+import kotlinx.serialization.Transient
 import kotlinx.serialization.json.JsonIgnoreUnknownKeys
-import java.time.Duration
-import java.time.Instant
 
 
 /**
@@ -47,6 +46,11 @@ data class Metric(
         return null
     }
 
+    /**
+     * The timestamp of the metric in nanoseconds since the epoch ([IsoTimestamp.NONE] if unknown).
+     */
+    val timestampNanos: Long get() = points?.firstOrNull { it.startTime != null }?.startTimeNanos ?: IsoTimestamp.NONE
+
     /**
      * The last metric point for each tag.
      */
@@ -117,10 +121,25 @@ data class MetricPoint(
     val histogramSum: Double? = null
 )
 {
+    /**
+     * The start time in nanoseconds since the epoch ([IsoTimestamp.NONE] if unknown).
+     */
+    @Transient
+    val startTimeNanos: Long = IsoTimestamp.parse(startTime)
+
+    /**
+     * The end time in nanoseconds since the epoch ([IsoTimestamp.NONE] if unknown).
+     */
+    @Transient
+    val endTimeNanos: Long = IsoTimestamp.parse(endTime)
+
+    /**
+     * The measured value: the sum, the gauge or the histogram sum.
+     */
+    val value: Double? get() = longSum?.toDouble() ?: doubleSum ?: longGauge?.toDouble() ?: doubleGauge ?: histogramSum
+
     val duration: TimeSpan? get() {
-        if (startTime == null || endTime == null) return null
-        val start = Instant.parse(startTime)
-        val end = Instant.parse(endTime)
-        return TimeSpan.fromDuration(Duration.between(start, end))
+        if (startTimeNanos == IsoTimestamp.NONE || endTimeNanos == IsoTimestamp.NONE) return null
+        return TimeSpan(endTimeNanos - startTimeNanos)
     }
 }
@@ -12,36 +12,56 @@ import kotlinx.serialization.json.*
 
 /**
  * A map of polymorphic objects (serialized in C# as Dictionary<string, object>).
- * @property json The raw JSON object.
+ *
+ * The entries are kept as two arrays sorted by key: the keys (shared between records by the session interner),
+ * and the JSON values (the internal constructor takes the arrays as is: the keys must be sorted and distinct).
+ * Values are only converted to native objects when they are read, and primitive values are read as strings
+ * without boxing. Dictionaries are equal when their converted values are (e.g. "1" equals 1).
  */
 @Serializable(with = ObjectDictionary.ObjectDictionarySerializer::class)
-class ObjectDictionary(private val json: JsonObject) {
+class ObjectDictionary internal constructor(
+    private val keys: Array<String>,
+    private val elements: Array<JsonElement>
+) {
+    constructor(json: JsonObject) : this(json, json.keys.sorted().toTypedArray())
+
+    private constructor(json: JsonObject, keys: Array<String>) : this(keys, Array(keys.size) { json.getValue(keys[it]) })
+
+    /**
+     * Structural hash of the converted values, consistent with [equals]
+     * (dictionaries are used as map keys, e.g. metric tags). Computed on first use, 0 until then.
+     */
+    private var hash: Int = 0
 
     /**
-     * The deserialized values
+     * The deserialized values (converted on first access)
      */
-    val values: Map<String, Any?> = createMap(json)
+    val values: Map<String, Any?> by lazy {
+        val result = LinkedHashMap<String, Any?>(keys.size * 2)
+        for (i in keys.indices) {
+            result[keys[i]] = createObject(elements[i])
+        }
+        result
+    }
 
     /**
      * Check if the dictionary contains a key.
      */
-    fun containsKey(key: String): Boolean = values.containsKey(key)
+    fun containsKey(key: String): Boolean = keys.binarySearch(key) >= 0
 
     /**
      * Get a value from the dictionary as a string.
      */
     fun getString(key: String): String? {
-        val value = values[key]
-        if (value is String) {
-            return value
+        val index = keys.binarySearch(key)
+        if (index < 0) {
+            return null
         }
-        if (value is Number) {
-            return value.toString()
+        val element = elements[index]
+        if (element is JsonPrimitive) {
+            return primitiveString(element)
         }
-        if (value is Boolean) {
-            return value.toString()
-        }
-        return value?.toString();
+        return createObject(element)?.toString()
     }
 
     /**
@@ -52,45 +72,69 @@ class ObjectDictionary(private val json: JsonObject) {
     }
 
     /**
-     * Gets primitive values from the dictionary as strings.
+     * Gets primitive values from the dictionary as strings, in key order.
      */
     fun getPrimitiveValues(): Map<String, String> {
-        val result = mutableMapOf<String, String>()
-        for ((key, value) in values) {
-            when (value) {
-                is String -> result[key] = value
-                is Number -> result[key] = value.toString()
-                is Boolean -> result[key] = value.toString()
+        val result = LinkedHashMap<String, String>(keys.size * 2)
+        for (i in keys.indices) {
+            val element = elements[i]
+            if (element is JsonPrimitive) {
                 // Ignore other types
+                primitiveString(element)?.let { result[keys[i]] = it }
             }
         }
         return result
     }
 
     override fun toString(): String {
-        return values.toString();
+        return values.toString()
     }
 
     override fun equals(other: Any?): Boolean {
         if (other !is ObjectDictionary) {
             return false
         }
-        return valueEquals(values, other.values)
+        if (!keys.contentEquals(other.keys)) {
+            return false
+        }
+        // Equal elements convert to equal values, without converting them
+        return elements.contentEquals(other.elements) ||
+                hashCode() == other.hashCode() && valueEquals(values, other.values)
     }
 
     override fun hashCode(): Int {
-        return 0 //Not implemented
+        var result = hash
+        if (result == 0) {
+            result = valueHash(values)
+            hash = result
+        }
+        return result
     }
 
     companion object {
-        private fun createMap(json: JsonObject): Map<String, Any?> {
-            val result = mutableMapOf<String, Any?>()
-            for ((key, value) in json) {
-                result[key] = createObject(value)
+        /**
+         * The string of a primitive value, as its native object would be displayed (see [createObject]).
+         * Strings that cannot be a boolean or a number are returned as is, without conversion.
+         */
+        private fun primitiveString(value: JsonPrimitive): String? {
+            if (value is JsonNull) {
+                return null
+            }
+            val content = value.content
+            if (content.isNotEmpty() && !mayBeConverted(content[0])) {
+                return if (content.indexOf('\r') >= 0) content.replace("\r", "") else content
             }
-            return result;
+            return createObject(value)?.toString()
         }
 
+        /**
+         * Whether a string starting with a character may be converted to a boolean or a number
+         */
+        private fun mayBeConverted(first: Char): Boolean =
+            first <= ' ' || first in '0'..'9' || first == '-' || first == '+' || first == '.' ||
+            first == 't' || first == 'f' || first == 'T' || first == 'F' ||
+            first == 'N' || first == 'I'
+
         /**
          * Create a native object from a JSON element.
          */
@@ -109,7 +153,11 @@ class ObjectDictionary(private val json: JsonObject) {
                 return result
             }
             if (value is JsonObject) {
-                return createMap(value)
+                val result = mutableMapOf<String, Any?>()
+                for ((key, element) in value) {
+                    result[key] = createObject(element)
+                }
+                return result
             }
             return null //Unknown type or null
         }
@@ -141,10 +189,35 @@ class ObjectDictionary(private val json: JsonObject) {
             if (left is Map<*, *>) {
                 return right is Map<*, *> &&
                         left.size == right.size &&
-                        left.all { (k, v) -> valueEquals(v, right[k]) }
+                        left.all { (k, v) -> right.containsKey(k) && valueEquals(v, right[k]) }
             }
             return false
         }
+
+        /**
+         * Hash a value, consistently with [valueEquals] (the order of the keys of a map does not matter).
+         */
+        private fun valueHash(value: Any?): Int {
+            if (value is List<*>) {
+                var result = 1
+                for (element in value) {
+                    result = 31 * result + valueHash(element)
+                }
+                return result
+            }
+            if (value is Map<*, *>) {
+                var result = 0
+                for ((k, v) in value) {
+                    result += k.hashCode() xor valueHash(v)
+                }
+                return result
+            }
+            if (value is Double && value == 0.0) {
+                // 0.0 and -0.0 are equal
+                return 0
+            }
+            return value?.hashCode() ?: 0
+        }
     }
 
     class ObjectDictionarySerializer : KSerializer<ObjectDictionary> {
@@ -158,7 +231,11 @@ class ObjectDictionary(private val json: JsonObject) {
         }
 
         override fun serialize(encoder: Encoder, value: ObjectDictionary) {
-            encoder.encodeSerializableValue(JsonObject.serializer(), value.json)
+            val entries = LinkedHashMap<String, JsonElement>(value.keys.size * 2)
+            for (i in value.keys.indices) {
+                entries[value.keys[i]] = value.elements[i]
+            }
+            encoder.encodeSerializableValue(JsonObject.serializer(), JsonObject(entries))
         }
     }
-}
\ No newline at end of file
+}
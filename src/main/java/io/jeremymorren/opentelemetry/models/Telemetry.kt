@@ -3,9 +3,9 @@
 
 package io.jeremymorren.opentelemetry.models
 
-import kotlinx.datetime.Instant
 import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.Serializable
+import kotlinx.serialization.Transient
 import kotlinx.serialization.json.JsonIgnoreUnknownKeys
 import kotlin.Int
 import kotlin.OptIn
@@ -26,14 +26,15 @@ data class Telemetry(
 
     val type: TelemetryType? = activity?.type ?: log?.type ?: metric?.type
 
-    val timestamp: Instant? get() {
-        val ts = activity?.startTime
-            ?: log?.timestamp
-            ?: metric?.timestamp
-        if (ts != null) {
-            return Instant.parse(ts)
-        }
-        return null
+    /**
+     * The timestamp in nanoseconds since the epoch ([IsoTimestamp.NONE] if unknown), parsed once when the telemetry
+     * is decoded.
+     */
+    @Transient
+    val timestampNanos: Long = when {
+        activity?.startTime != null -> activity.startTimeNanos
+        log?.timestamp != null -> log.timestampNanos
+        else -> metric?.timestampNanos ?: IsoTimestamp.NONE
     }
 }
 
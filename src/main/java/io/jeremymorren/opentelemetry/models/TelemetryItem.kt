@@ -1,16 +1,189 @@
 package io.jeremymorren.opentelemetry.models
 
-import kotlinx.datetime.toJavaInstant
-import java.util.*
+import io.jeremymorren.opentelemetry.store.PayloadStore
+import kotlinx.serialization.json.Json
+import java.lang.ref.SoftReference
+import java.time.LocalTime
+import java.time.ZoneId
 
-data class TelemetryItem(
-    val json: String,
-    val telemetry: Telemetry
+/**
+ * A parsed telemetry record.
+ *
+ * The JSON can be moved out of the heap with [spill]: it is then read back from the [PayloadStore] when needed,
+ * and the parsed telemetry is only softly referenced (it is parsed again from the JSON if it was collected).
+ * The fields used to sort and filter the session, and the text displayed in the table, are computed when the item
+ * is created (off the EDT) and always kept on the heap.
+ */
+class TelemetryItem(
+    json: String,
+    telemetry: Telemetry
 )
 {
-    val lowerCaseJson: String = json.lowercase(Locale.getDefault())
+    private var heapJson: String? = json
+    private var heapTelemetry: Telemetry? = telemetry
+
+    private var payloadStore: PayloadStore? = null
+    private var payloadRef: Long = -1
+
+    @Volatile
+    private var released = false
+
+    @Volatile
+    private var softTelemetry: SoftReference<Telemetry>? = null
+
+    /**
+     * The compact JSON of the record (pretty-printed only when displayed).
+     * A spilled item whose JSON can no longer be read (it was evicted, or the session ended) has an empty JSON object.
+     */
+    val json: String
+        get() {
+            heapJson?.let { return it }
+            if (released) {
+                return UNAVAILABLE_JSON
+            }
+            return try {
+                payloadStore!!.read(payloadRef)
+            } catch (e: IllegalStateException) {
+                UNAVAILABLE_JSON
+            }
+        }
+
+    val telemetry: Telemetry
+        get() {
+            heapTelemetry?.let { return it }
+            softTelemetry?.get()?.let { return it }
+            val telemetry = Json.decodeFromString(Telemetry.serializer(), json)
+            softTelemetry = SoftReference(telemetry)
+            return telemetry
+        }
+
+    /**
+     * True if the JSON is stored outside the heap.
+     */
+    val isSpilled: Boolean get() = heapJson == null
+
+    /**
+     * The length of the JSON, used to estimate the size of the item
+     */
+    val jsonLength: Int = json.length
+
+    /**
+     * The number of points, if the telemetry is a metric
+     */
+    val metricPointCount: Int = telemetry.metric?.points?.size ?: 0
+
+    val type: TelemetryType? = telemetry.type
+
+    /**
+     * The log level, if the telemetry is a log message.
+     */
+    val logLevel: LogLevel? = telemetry.log?.logLevel
 
-    val timestamp: java.time.Instant? = telemetry.timestamp?.toJavaInstant()
+    /**
+     * The dependency type, if the telemetry is an HTTP or SQL dependency.
+     */
+    val dependencyType: DependencyType? = telemetry.activity?.dependencyType
+
+    val timestamp: java.time.Instant? = IsoTimestamp.toInstant(telemetry.timestampNanos)
 
     val duration: TimeSpan? = telemetry.activity?.duration
-}
\ No newline at end of file
+
+    /**
+     * The timestamp in nanoseconds since the epoch (0 if unknown), used as sort key.
+     */
+    val timestampNanos: Long = if (telemetry.timestampNanos == IsoTimestamp.NONE) 0L else telemetry.timestampNanos
+
+    /**
+     * The duration in nanoseconds (0 if unknown), used as sort key.
+     */
+    val durationNanos: Long = duration?.totalNanos ?: 0L
+
+    /**
+     * True if the telemetry is a failed activity, an exception or an error log.
+     */
+    val isError: Boolean =
+        telemetry.activity?.isError == true ||
+        telemetry.log?.type == TelemetryType.Exception ||
+        telemetry.log?.logLevel == LogLevel.Error ||
+        telemetry.log?.logLevel == LogLevel.Critical
+
+    /**
+     * The timestamp displayed in the table (local time, e.g. `13:05:42.7` for 7 milliseconds).
+     */
+    val timestampText: String? = timestamp?.let { formatTime(LocalTime.ofInstant(it, ZoneId.systemDefault())) }
+
+    /**
+     * The detail displayed in the table.
+     */
+    val detail: String? = when {
+        telemetry.log != null -> telemetry.log.displayMessage
+        telemetry.metric != null -> telemetry.metric.detail
+        else -> telemetry.activity?.detail
+    }
+
+    val detailStyle: DetailStyle = when {
+        telemetry.log != null -> when (telemetry.log.logLevel) {
+            LogLevel.Warning -> DetailStyle.Warning
+            LogLevel.Error -> DetailStyle.Error
+            LogLevel.Critical -> DetailStyle.Critical
+            else -> DetailStyle.Default
+        }
+        telemetry.activity != null -> if (telemetry.activity.isError) DetailStyle.Error else DetailStyle.Default
+        else -> DetailStyle.Plain
+    }
+
+    /**
+     * Move the JSON to [store]. Must be called before the item is published to other threads.
+     * @return True if the JSON was stored, false if it is kept on the heap
+     */
+    fun spill(store: PayloadStore): Boolean {
+        val json = heapJson ?: return true
+        val ref = store.append(json)
+        if (ref < 0) {
+            return false
+        }
+        payloadStore = store
+        payloadRef = ref
+        heapTelemetry?.let { softTelemetry = SoftReference(it) }
+        heapJson = null
+        heapTelemetry = null
+        return true
+    }
+
+    /**
+     * Release the JSON moved out of the heap, once the item is evicted from the session.
+     */
+    fun release() {
+        val store = payloadStore ?: return
+        if (!released) {
+            released = true
+            store.release(payloadRef)
+        }
+    }
+
+    private companion object {
+        const val UNAVAILABLE_JSON = "{}"
+
+        /**
+         * Format as `HH:mm:ss.S` with [java.text.SimpleDateFormat] (milliseconds are not padded).
+         */
+        fun formatTime(time: LocalTime): String {
+            val builder = StringBuilder(12)
+            appendTwoDigits(builder, time.hour)
+            builder.append(':')
+            appendTwoDigits(builder, time.minute)
+            builder.append(':')
+            appendTwoDigits(builder, time.second)
+            builder.append('.')
+            builder.append(time.nano / 1_000_000)
+            return builder.toString()
+        }
+
+        private fun appendTwoDigits(builder: StringBuilder, value: Int) {
+            if (value < 10) {
+                builder.append('0')
+            }
+            builder.append(value)
+        }
+    }
+}
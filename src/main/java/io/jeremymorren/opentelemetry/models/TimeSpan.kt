@@ -12,15 +12,29 @@ import java.text.DecimalFormat
 import java.time.Duration
 
 /**
- * C# Timespan equivalent (HH:mm:ss.ffffff)
- * @property hours Hour component
- * @property minutes Minute component
- * @property seconds Seconds component
+ * C# Timespan equivalent (HH:mm:ss.ffffff), stored as a number of nanoseconds.
+ * @property totalNanos The total duration in nanoseconds
  */
 @Serializable(with = TimeSpan.TimeSpanSerializer::class)
-class TimeSpan(val hours: Int,
-               val minutes: Int,
-               val seconds: Double) : Comparable<TimeSpan> {
+class TimeSpan(val totalNanos: Long) : Comparable<TimeSpan> {
+
+    /**
+     * Hour component (including the days)
+     */
+    val hours: Int
+        get() = (totalNanos / NANOS_PER_HOUR).toInt()
+
+    /**
+     * Minute component
+     */
+    val minutes: Int
+        get() = ((totalNanos / NANOS_PER_MINUTE) % 60).toInt()
+
+    /**
+     * Seconds component (with the fraction of second)
+     */
+    val seconds: Double
+        get() = (totalNanos % NANOS_PER_MINUTE) / NANOS_PER_SECOND.toDouble()
 
     val milliseconds: Double
         get() = seconds * 1_000
@@ -30,7 +44,7 @@ class TimeSpan(val hours: Int,
 
     override fun toString(): String {
         // Format with 1 decimal point
-        val formatter = DecimalFormat("0.0")
+        val formatter = FORMATTER.get()
 
         if (hours != 0) {
             return "${hours}h ${minutes}m ${formatter.format(seconds)}s"
@@ -53,15 +67,25 @@ class TimeSpan(val hours: Int,
     }
 
     val totalSeconds: Double
-        get() = (hours * 3_600) + (minutes * 60) + seconds
+        get() = totalNanos / NANOS_PER_SECOND.toDouble()
 
-    override fun compareTo(other: TimeSpan): Int = totalSeconds.compareTo(other.totalSeconds)
+    override fun compareTo(other: TimeSpan): Int = totalNanos.compareTo(other.totalNanos)
 
     operator fun minus(other: TimeSpan): TimeSpan {
-        return fromSeconds(totalSeconds - other.totalSeconds)
+        return TimeSpan(totalNanos - other.totalNanos)
     }
 
     companion object {
+        private const val NANOS_PER_SECOND = 1_000_000_000L
+        private const val NANOS_PER_MINUTE = 60 * NANOS_PER_SECOND
+        private const val NANOS_PER_HOUR = 60 * NANOS_PER_MINUTE
+        private const val NANOS_PER_DAY = 24 * NANOS_PER_HOUR
+
+        /**
+         * [DecimalFormat] is not thread safe
+         */
+        private val FORMATTER = ThreadLocal.withInitial { DecimalFormat("0.0") }
+
         fun fromSeconds(seconds: Double): TimeSpan {
             val duration = Duration.ofSeconds(
                 seconds.toLong(),
@@ -70,27 +94,98 @@ class TimeSpan(val hours: Int,
         }
 
         fun fromDuration(duration: Duration): TimeSpan {
-            return TimeSpan(
-                duration.toHoursPart(),
-                duration.toMinutesPart(),
-                duration.toSecondsPart() + (duration.nano / 1_000_000_000.0))
+            return TimeSpan(duration.toNanos())
         }
 
         /**
          * Parse a TimeSpan from a string (D.HH:mm:ss.ffffff)
          */
         fun fromJsonString(value: String): TimeSpan {
-            val split = value.split(':', limit = 3).toTypedArray()
-            val hours = split[0].split('.', limit = 2).toTypedArray()
-
-            return TimeSpan(
-                if (hours.size > 1)
-                    (hours[0].toInt() * 24) + hours[1].toInt()
-                else
-                    hours[0].toInt(),
-                split[1].toInt(),
-                split[2].toDouble())
+            return TimeSpan(parseNanos(value))
+        }
+
+        /**
+         * Parse a string in the C# TimeSpan format (`[-][d.]hh:mm:ss[.fffffff]`) to nanoseconds, without allocating.
+         */
+        fun parseNanos(value: CharSequence): Long {
+            var i = 0
+            val negative = value.isNotEmpty() && value[0] == '-'
+            if (negative) {
+                i++
+            }
+
+            // The first number is the days if it is followed by '.', else the hours
+            var end = digitsEnd(value, i)
+            var hours = parseDigits(value, i, end)
+            var days = 0L
+            if (end < value.length && value[end] == '.') {
+                days = hours
+                i = end + 1
+                end = digitsEnd(value, i)
+                hours = parseDigits(value, i, end)
+            }
+
+            i = expect(value, end, ':')
+            end = digitsEnd(value, i)
+            val minutes = parseDigits(value, i, end)
+
+            i = expect(value, end, ':')
+            end = digitsEnd(value, i)
+            val seconds = parseDigits(value, i, end)
+
+            // Fraction of second: digits after the 9th (below the nanosecond) are ignored
+            var fraction = 0L
+            if (end < value.length && value[end] == '.') {
+                i = end + 1
+                end = digitsEnd(value, i)
+                if (end == i) {
+                    throw invalid(value)
+                }
+                var scale = NANOS_PER_SECOND
+                for (j in i until minOf(end, i + 9)) {
+                    scale /= 10
+                    fraction += (value[j] - '0') * scale
+                }
+            }
+            if (end != value.length) {
+                throw invalid(value)
+            }
+
+            val nanos = days * NANOS_PER_DAY + hours * NANOS_PER_HOUR + minutes * NANOS_PER_MINUTE +
+                    seconds * NANOS_PER_SECOND + fraction
+            return if (negative) -nanos else nanos
+        }
+
+        private fun digitsEnd(value: CharSequence, from: Int): Int {
+            var end = from
+            while (end < value.length && value[end] in '0'..'9') {
+                end++
+            }
+            return end
+        }
+
+        private fun parseDigits(value: CharSequence, from: Int, to: Int): Long {
+            if (from == to || to - from > 18) {
+                throw invalid(value)
+            }
+            var result = 0L
+            for (i in from until to) {
+                result = result * 10 + (value[i] - '0')
+            }
+            return result
         }
+
+        /**
+         * @return The index after the separator
+         */
+        private fun expect(value: CharSequence, index: Int, separator: Char): Int {
+            if (index >= value.length || value[index] != separator) {
+                throw invalid(value)
+            }
+            return index + 1
+        }
+
+        private fun invalid(value: CharSequence) = NumberFormatException("Invalid TimeSpan: $value")
     }
 
     object TimeSpanSerializer : KSerializer<TimeSpan> {
@@ -107,4 +202,3 @@ class TimeSpan(val hours: Int,
         }
     }
 }
-
@@ -0,0 +1,471 @@
+package io.jeremymorren.opentelemetry.search;
+
+import io.jeremymorren.opentelemetry.models.DependencyType;
+import io.jeremymorren.opentelemetry.models.LogLevel;
+import io.jeremymorren.opentelemetry.models.ObjectDictionary;
+import io.jeremymorren.opentelemetry.models.Telemetry;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import io.jeremymorren.opentelemetry.models.TelemetryType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A filter query, parsed once into a predicate over the typed fields of the telemetry, and the remaining free text.
+ * <p>
+ * The query is split on whitespace (double quotes group words). Terms on known fields are structured:
+ * <ul>
+ *     <li>{@code type:Dependency} (several values can be separated by commas)</li>
+ *     <li>{@code dep:SQL}, {@code dep:HTTP}</li>
+ *     <li>{@code duration>100ms} (units: ns, us, ms, s, m, h; milliseconds by default)</li>
+ *     <li>{@code level>=Warning} (levels are ordered by severity, {@code None} can only be compared for equality)</li>
+ *     <li>{@code error:true}</li>
+ *     <li>{@code tag.db.name=orders} (activity tags or log attributes; numbers can be compared with {@code <} and {@code >})</li>
+ * </ul>
+ * Operators are {@code :}, {@code =}, {@code !=}, {@code <}, {@code <=}, {@code >} and {@code >=},
+ * and a term can be negated with a leading {@code -}. All structured terms must match.
+ * Anything else is free text, searched as typed as a substring of the JSON (double quotes are kept, so that
+ * e.g. {@code "name":"orders"} matches a field exactly). Double quotes are only removed from the values of
+ * structured terms, e.g. {@code tag.db.statement="SELECT 1"}.
+ * <p>
+ * Terms on the type, log level and error status are also expressed as masks, so that a store can evaluate them
+ * with its bitmaps; the other terms make up the residual predicate.
+ */
+public final class TelemetryQuery {
+    private static final Pattern TERM = Pattern.compile(
+            "(-?)(type|dep|duration|level|error|tag\\.[^:=<>!]+)(:|!=|>=|<=|=|>|<)(.+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern DURATION = Pattern.compile(
+            "(\\d+(?:\\.\\d*)?)\\s*(ns|us|µs|ms|s|m|h)?",
+            Pattern.CASE_INSENSITIVE);
+
+    @NotNull
+    private final String text;
+    @Nullable
+    private final Predicate<TelemetryItem> predicate;
+    @NotNull
+    private final Masks masks;
+
+    private TelemetryQuery(@NotNull String text, @Nullable Predicate<TelemetryItem> predicate, @NotNull Masks masks) {
+        this.text = text;
+        this.predicate = predicate;
+        this.masks = masks;
+    }
+
+    /**
+     * Parse a query. A query without structured terms is searched as typed.
+     */
+    @NotNull
+    public static TelemetryQuery parse(@NotNull String query) {
+        Predicate<TelemetryItem> predicate = null;
+        Masks masks = new Masks();
+        List<String> text = new ArrayList<>();
+        for (String token : tokenize(query)) {
+            Predicate<TelemetryItem> term = parseTerm(token);
+            if (term == null) {
+                text.add(token);
+                continue;
+            }
+            predicate = predicate == null ? term : predicate.and(term);
+            if (!masks.add(token)) {
+                masks.residual = masks.residual == null ? term : masks.residual.and(term);
+            }
+        }
+        if (predicate == null) {
+            return new TelemetryQuery(query, null, masks);
+        }
+        return new TelemetryQuery(String.join(" ", text), predicate, masks);
+    }
+
+    /**
+     * The free text of the query (empty if none)
+     */
+    @NotNull
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * The predicate of the structured terms, or null if there are none
+     */
+    @Nullable
+    public Predicate<TelemetryItem> getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * Types matching the query, indexed by {@link TelemetryType#ordinal()} and followed by an entry for
+     * the items without a type, or null if the query has no type terms
+     */
+    @Nullable
+    public boolean[] getTypeMask() {
+        return masks.types != null ? masks.types.clone() : null;
+    }
+
+    /**
+     * Log levels matching the query, indexed by {@link LogLevel#ordinal()} (items without a level do not match),
+     * or null if the query has no level terms
+     */
+    @Nullable
+    public boolean[] getLevelMask() {
+        return masks.levels != null ? masks.levels.clone() : null;
+    }
+
+    /**
+     * The error status matching the query, or null if the query has no error terms
+     */
+    @Nullable
+    public Boolean getError() {
+        return masks.error;
+    }
+
+    /**
+     * The predicate of the structured terms not expressed by the masks, or null if there are none
+     */
+    @Nullable
+    public Predicate<TelemetryItem> getResidualPredicate() {
+        return masks.residual;
+    }
+
+    /**
+     * Check the structured terms of the query (the free text is not checked).
+     */
+    public boolean test(@NotNull TelemetryItem item) {
+        return predicate == null || predicate.test(item);
+    }
+
+    @NotNull
+    private static List<String> tokenize(@NotNull String query) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            if (!quoted && Character.isWhitespace(c)) {
+                if (!token.isEmpty()) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            } else {
+                token.append(c);
+            }
+        }
+        if (!token.isEmpty()) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Parse a structured term.
+     * @return The predicate, or null if the token is not a structured term (or its value is not valid)
+     */
+    @Nullable
+    private static Predicate<TelemetryItem> parseTerm(@NotNull String token) {
+        Matcher matcher = TERM.matcher(token);
+        if (!matcher.matches()) {
+            return null;
+        }
+        boolean negate = !matcher.group(1).isEmpty();
+        String field = matcher.group(2);
+        Operator operator = Operator.parse(matcher.group(3));
+        String value = unquote(matcher.group(4));
+
+        String fieldLower = field.toLowerCase(Locale.ROOT);
+        Predicate<TelemetryItem> predicate = switch (fieldLower) {
+            case "type" -> parseTypeTerm(operator, value);
+            case "dep" -> parseDependencyTerm(operator, value);
+            case "duration" -> parseDurationTerm(operator, value);
+            case "level" -> parseLevelTerm(operator, value);
+            case "error" -> parseErrorTerm(operator, value);
+            default -> parseTagTerm(field.substring("tag.".length()), operator, value);
+        };
+        if (predicate == null || !negate) {
+            return predicate;
+        }
+        return predicate.negate();
+    }
+
+    @Nullable
+    private static Predicate<TelemetryItem> parseTypeTerm(@NotNull Operator operator, @NotNull String value) {
+        if (!operator.isEquality()) {
+            return null;
+        }
+        boolean[] types = new boolean[TelemetryType.values().length];
+        for (String name : value.split(",")) {
+            TelemetryType type = parseEnum(TelemetryType.values(), name);
+            if (type == null) {
+                return null;
+            }
+            types[type.ordinal()] = true;
+        }
+        boolean expected = operator == Operator.EQ;
+        return item -> {
+            TelemetryType type = item.getType();
+            return (type != null && types[type.ordinal()]) == expected;
+        };
+    }
+
+    @Nullable
+    private static Predicate<TelemetryItem> parseDependencyTerm(@NotNull Operator operator, @NotNull String value) {
+        if (!operator.isEquality()) {
+            return null;
+        }
+        DependencyType dependencyType = parseEnum(DependencyType.values(), value);
+        if (dependencyType == null) {
+            return null;
+        }
+        boolean expected = operator == Operator.EQ;
+        return item -> (item.getDependencyType() == dependencyType) == expected;
+    }
+
+    @Nullable
+    private static Predicate<TelemetryItem> parseDurationTerm(@NotNull Operator operator, @NotNull String value) {
+        long nanos = parseDurationNanos(value);
+        if (nanos < 0) {
+            return null;
+        }
+        return item -> item.getDuration() != null && operator.test(Long.compare(item.getDurationNanos(), nanos));
+    }
+
+    @Nullable
+    private static Predicate<TelemetryItem> parseLevelTerm(@NotNull Operator operator, @NotNull String value) {
+        LogLevel level = parseEnum(LogLevel.values(), value);
+        if (level == null || (level == LogLevel.None && !operator.isEquality())) {
+            return null;
+        }
+        return item -> {
+            LogLevel itemLevel = item.getLogLevel();
+            return itemLevel != null && testLevel(operator, itemLevel, level);
+        };
+    }
+
+    /**
+     * Compare log levels by severity. {@link LogLevel#None} (logging disabled) is not a severity:
+     * it is only equal to itself.
+     */
+    private static boolean testLevel(@NotNull Operator operator, @NotNull LogLevel level, @NotNull LogLevel value) {
+        if (!operator.isEquality() && (level == LogLevel.None || value == LogLevel.None)) {
+            return false;
+        }
+        return operator.test(Integer.compare(level.ordinal(), value.ordinal()));
+    }
+
+    @Nullable
+    private static Predicate<TelemetryItem> parseErrorTerm(@NotNull Operator operator, @NotNull String value) {
+        if (!operator.isEquality() || !(value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"))) {
+            return null;
+        }
+        boolean expected = Boolean.parseBoolean(value) == (operator == Operator.EQ);
+        return item -> item.isError() == expected;
+    }
+
+    @NotNull
+    private static Predicate<TelemetryItem> parseTagTerm(
+            @NotNull String key,
+            @NotNull Operator operator,
+            @NotNull String value) {
+        if (operator.isEquality()) {
+            boolean expected = operator == Operator.EQ;
+            return item -> {
+                String tag = getTag(item, key);
+                return (tag != null && tag.equalsIgnoreCase(value)) == expected;
+            };
+        }
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return item -> {
+                String tag = getTag(item, key);
+                return tag != null && operator.test(tag.compareToIgnoreCase(value));
+            };
+        }
+        return item -> {
+            String tag = getTag(item, key);
+            if (tag == null) {
+                return false;
+            }
+            try {
+                return operator.test(Double.compare(Double.parseDouble(tag), number));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a tag of an activity, or an attribute of a log message
+     */
+    @Nullable
+    private static String getTag(@NotNull TelemetryItem item, @NotNull String key) {
+        Telemetry telemetry = item.getTelemetry();
+        ObjectDictionary tags = telemetry.getActivity() != null
+                ? telemetry.getActivity().getTags()
+                : telemetry.getLog() != null ? telemetry.getLog().getAttributes() : null;
+        return tags != null ? tags.getString(key) : null;
+    }
+
+    /**
+     * Parse a duration (e.g. {@code 100ms} or {@code 1.5s})
+     * @return The duration in nanoseconds, or -1 if the value is not valid
+     */
+    private static long parseDurationNanos(@NotNull String value) {
+        Matcher matcher = DURATION.matcher(value);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        double amount = Double.parseDouble(matcher.group(1));
+        String unit = matcher.group(2) == null ? "ms" : matcher.group(2).toLowerCase(Locale.ROOT);
+        double nanosPerUnit = switch (unit) {
+            case "ns" -> 1;
+            case "us", "µs" -> 1_000;
+            case "s" -> 1_000_000_000;
+            case "m" -> 60_000_000_000.0;
+            case "h" -> 3_600_000_000_000.0;
+            default -> 1_000_000;
+        };
+        return (long) (amount * nanosPerUnit);
+    }
+
+    @Nullable
+    private static <T extends Enum<T>> T parseEnum(@NotNull T[] values, @NotNull String name) {
+        for (T value : values) {
+            if (value.name().equalsIgnoreCase(name)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    private static String unquote(@NotNull String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * The terms of a query on indexed fields
+     */
+    private static final class Masks {
+        @Nullable
+        boolean[] types;
+        @Nullable
+        boolean[] levels;
+        @Nullable
+        Boolean error;
+        @Nullable
+        Predicate<TelemetryItem> residual;
+
+        /**
+         * Add a valid structured term to the masks.
+         * @return False if the term cannot be expressed by the masks
+         */
+        boolean add(@NotNull String token) {
+            Matcher matcher = TERM.matcher(token);
+            if (!matcher.matches()) {
+                return false;
+            }
+            boolean negate = !matcher.group(1).isEmpty();
+            Operator operator = Operator.parse(matcher.group(3));
+            String value = unquote(matcher.group(4));
+            switch (matcher.group(2).toLowerCase(Locale.ROOT)) {
+                case "type" -> {
+                    // Values were validated when the predicate was created
+                    boolean expected = (operator == Operator.EQ) != negate;
+                    boolean[] mask = new boolean[TelemetryType.values().length + 1];
+                    mask[TelemetryType.values().length] = !expected;
+                    for (String name : value.split(",")) {
+                        mask[parseEnum(TelemetryType.values(), name).ordinal()] = true;
+                    }
+                    for (int i = 0; i < TelemetryType.values().length; i++) {
+                        mask[i] = mask[i] == expected;
+                    }
+                    types = and(types, mask);
+                    return true;
+                }
+                case "level" -> {
+                    if (negate) {
+                        // Items without a level would match
+                        return false;
+                    }
+                    LogLevel level = parseEnum(LogLevel.values(), value);
+                    boolean[] mask = new boolean[LogLevel.values().length];
+                    for (LogLevel l : LogLevel.values()) {
+                        mask[l.ordinal()] = testLevel(operator, l, level);
+                    }
+                    levels = and(levels, mask);
+                    return true;
+                }
+                case "error" -> {
+                    boolean expected = Boolean.parseBoolean(value) == (operator == Operator.EQ) != negate;
+                    if (error != null && error != expected) {
+                        return false;
+                    }
+                    error = expected;
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+
+        @NotNull
+        private static boolean[] and(@Nullable boolean[] mask, @NotNull boolean[] other) {
+            if (mask == null) {
+                return other;
+            }
+            for (int i = 0; i < mask.length; i++) {
+                mask[i] &= other[i];
+            }
+            return mask;
+        }
+    }
+
+    private enum Operator {
+        EQ, NE, LT, LE, GT, GE;
+
+        @NotNull
+        static Operator parse(@NotNull String operator) {
+            return switch (operator) {
+                case "!=" -> NE;
+                case "<" -> LT;
+                case "<=" -> LE;
+                case ">" -> GT;
+                case ">=" -> GE;
+                default -> EQ;
+            };
+        }
+
+        boolean isEquality() {
+            return this == EQ || this == NE;
+        }
+
+        /**
+         * @param comparison The comparison of the field to the value of the term
+         */
+        boolean test(int comparison) {
+            return switch (this) {
+                case EQ -> comparison == 0;
+                case NE -> comparison != 0;
+                case LT -> comparison < 0;
+                case LE -> comparison <= 0;
+                case GT -> comparison > 0;
+                case GE -> comparison >= 0;
+            };
+        }
+    }
+}
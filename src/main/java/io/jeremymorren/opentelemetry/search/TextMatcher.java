@@ -0,0 +1,74 @@
+package io.jeremymorren.opentelemetry.search;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Searches for a string within text, optionally ignoring case.
+ * <p>
+ * Case-insensitive matching compares characters in place (with the same case folding as
+ * {@link String#regionMatches(boolean, int, String, int, int)}), so no lower-cased copy of the text is needed.
+ */
+public final class TextMatcher {
+    @NotNull
+    private final String pattern;
+    private final boolean ignoreCase;
+
+    /**
+     * First character of the pattern, folded as by regionMatches
+     */
+    private final char firstUpper;
+    private final char firstLower;
+
+    public TextMatcher(@NotNull String pattern, boolean ignoreCase) {
+        this.pattern = pattern;
+        this.ignoreCase = ignoreCase;
+        char first = pattern.isEmpty() ? 0 : pattern.charAt(0);
+        this.firstUpper = Character.toUpperCase(first);
+        this.firstLower = Character.toLowerCase(firstUpper);
+    }
+
+    @NotNull
+    public String getPattern() {
+        return pattern;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Check if the text contains the pattern.
+     */
+    public boolean matches(@NotNull String text) {
+        return indexOf(text, 0) >= 0;
+    }
+
+    /**
+     * Find the first occurrence of the pattern in the text, at or after {@code fromIndex}.
+     * @return The index of the match, or -1 if not found
+     */
+    public int indexOf(@NotNull String text, int fromIndex) {
+        if (!ignoreCase) {
+            return text.indexOf(pattern, fromIndex);
+        }
+        int length = pattern.length();
+        if (length == 0) {
+            return Math.min(fromIndex, text.length());
+        }
+        int last = text.length() - length;
+        for (int i = Math.max(fromIndex, 0); i <= last; i++) {
+            if (firstCharMatches(text.charAt(i)) && text.regionMatches(true, i + 1, pattern, 1, length - 1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean firstCharMatches(char c) {
+        if (c == firstUpper || c == firstLower) {
+            return true;
+        }
+        char upper = Character.toUpperCase(c);
+        return upper == firstUpper || Character.toLowerCase(upper) == firstLower;
+    }
+}
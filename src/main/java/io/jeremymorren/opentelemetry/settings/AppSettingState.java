@@ -9,8 +9,10 @@ import com.intellij.util.xmlb.XmlSerializerUtil;
 import com.intellij.util.xmlb.annotations.OptionTag;
 import com.jetbrains.rd.util.lifetime.LifetimeDefinition;
 import com.jetbrains.rd.util.reactive.Property;
+import io.jeremymorren.opentelemetry.models.TelemetryType;
 import io.jeremymorren.opentelemetry.settings.converters.BooleanPropertyConverter;
 import io.jeremymorren.opentelemetry.settings.converters.FilterTelemetryModePropertyConverter;
+import io.jeremymorren.opentelemetry.settings.converters.IntegerPropertyConverter;
 import kotlin.Unit;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -27,6 +29,30 @@ public class AppSettingState implements PersistentStateComponentWithModification
     @OptionTag(converter = BooleanPropertyConverter.class)
     public final Property<Boolean> caseInsensitiveSearch = new Property<>(false);
 
+    // Retention (0 = unlimited)
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxItems = new Property<>(200_000);
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxMegabytes = new Property<>(512);
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxAgeMinutes = new Property<>(0);
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxMetrics = new Property<>(0);
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxExceptions = new Property<>(0);
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxMessages = new Property<>(0);
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxDependencies = new Property<>(0);
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxRequests = new Property<>(0);
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> retentionMaxActivities = new Property<>(0);
+
+    // Store the JSON of new sessions in a memory-mapped file instead of the heap
+    @OptionTag(converter = BooleanPropertyConverter.class)
+    public final Property<Boolean> spillPayloadsToDisk = new Property<>(false);
+
     public AppSettingState() {
         registerAllPropertyToIncrementTrackerOnChanges(this);
     }
@@ -54,6 +80,27 @@ public class AppSettingState implements PersistentStateComponentWithModification
     private void registerAllPropertyToIncrementTrackerOnChanges(@NotNull AppSettingState state) {
         incrementTrackerWhenPropertyChanges(caseInsensitiveSearch);
         incrementTrackerWhenPropertyChanges(filterTelemetryMode);
+        incrementTrackerWhenPropertyChanges(retentionMaxItems);
+        incrementTrackerWhenPropertyChanges(retentionMaxMegabytes);
+        incrementTrackerWhenPropertyChanges(retentionMaxAgeMinutes);
+        incrementTrackerWhenPropertyChanges(spillPayloadsToDisk);
+        for (TelemetryType type : TelemetryType.values()) {
+            incrementTrackerWhenPropertyChanges(getRetentionQuota(type));
+        }
+    }
+
+    /**
+     * Maximum number of items of a type kept in a session (0 = unlimited)
+     */
+    public Property<Integer> getRetentionQuota(TelemetryType type) {
+        return switch (type) {
+            case Metric -> retentionMaxMetrics;
+            case Exception -> retentionMaxExceptions;
+            case Message -> retentionMaxMessages;
+            case Dependency -> retentionMaxDependencies;
+            case Request -> retentionMaxRequests;
+            case Activity -> retentionMaxActivities;
+        };
     }
 
     private <T> void incrementTrackerWhenPropertyChanges(Property<T> property) {
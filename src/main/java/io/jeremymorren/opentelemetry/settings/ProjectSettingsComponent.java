@@ -1,22 +1,45 @@
 package io.jeremymorren.opentelemetry.settings;
 
+import com.intellij.ui.JBIntSpinner;
+import com.intellij.ui.TitledSeparator;
 import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBTextArea;
 import com.intellij.util.ui.FormBuilder;
+import io.jeremymorren.opentelemetry.models.TelemetryType;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class ProjectSettingsComponent {
 
     private final JPanel minPanel;
     private final JBCheckBox caseInsensitiveFiltering = new JBCheckBox("Case insensitive log filtering");
 
+    private final JBIntSpinner retentionMaxItems = new JBIntSpinner(0, 0, Integer.MAX_VALUE, 10_000);
+    private final JBIntSpinner retentionMaxMegabytes = new JBIntSpinner(0, 0, Integer.MAX_VALUE, 64);
+    private final JBIntSpinner retentionMaxAgeMinutes = new JBIntSpinner(0, 0, Integer.MAX_VALUE, 10);
+    private final Map<TelemetryType, JBIntSpinner> retentionQuotas = new EnumMap<>(TelemetryType.class);
+    private final JBCheckBox spillPayloadsToDisk =
+            new JBCheckBox("Store telemetry JSON in a memory-mapped file (applies to new debug sessions)");
+
     public ProjectSettingsComponent() {
-        minPanel = FormBuilder.createFormBuilder()
+        FormBuilder builder = FormBuilder.createFormBuilder()
                 .addComponent(caseInsensitiveFiltering, 1)
+                .addComponent(new TitledSeparator("Retention (0 = unlimited)"))
+                .addLabeledComponent("Maximum items:", retentionMaxItems)
+                .addLabeledComponent("Maximum size (MB):", retentionMaxMegabytes)
+                .addLabeledComponent("Maximum age (minutes):", retentionMaxAgeMinutes);
+        for (TelemetryType type : TelemetryType.values()) {
+            JBIntSpinner quota = new JBIntSpinner(0, 0, Integer.MAX_VALUE, 1_000);
+            retentionQuotas.put(type, quota);
+            builder.addLabeledComponent("Maximum " + type + " items:", quota);
+        }
+        minPanel = builder
+                .addComponent(spillPayloadsToDisk)
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
     }
@@ -36,4 +59,44 @@ public class ProjectSettingsComponent {
     public void setCaseInsensitiveFiltering(boolean value) {
         caseInsensitiveFiltering.setSelected(value);
     }
+
+    public int getRetentionMaxItems() {
+        return retentionMaxItems.getNumber();
+    }
+
+    public void setRetentionMaxItems(int value) {
+        retentionMaxItems.setNumber(value);
+    }
+
+    public int getRetentionMaxMegabytes() {
+        return retentionMaxMegabytes.getNumber();
+    }
+
+    public void setRetentionMaxMegabytes(int value) {
+        retentionMaxMegabytes.setNumber(value);
+    }
+
+    public int getRetentionMaxAgeMinutes() {
+        return retentionMaxAgeMinutes.getNumber();
+    }
+
+    public void setRetentionMaxAgeMinutes(int value) {
+        retentionMaxAgeMinutes.setNumber(value);
+    }
+
+    public int getRetentionQuota(@NotNull TelemetryType type) {
+        return retentionQuotas.get(type).getNumber();
+    }
+
+    public void setRetentionQuota(@NotNull TelemetryType type, int value) {
+        retentionQuotas.get(type).setNumber(value);
+    }
+
+    public boolean getSpillPayloadsToDisk() {
+        return spillPayloadsToDisk.isSelected();
+    }
+
+    public void setSpillPayloadsToDisk(boolean value) {
+        spillPayloadsToDisk.setSelected(value);
+    }
 }
@@ -2,6 +2,7 @@ package io.jeremymorren.opentelemetry.settings;
 
 import com.intellij.openapi.options.SearchableConfigurable;
 import com.intellij.openapi.project.Project;
+import io.jeremymorren.opentelemetry.models.TelemetryType;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -40,6 +41,18 @@ public class ProjectSettingsConfigurable implements SearchableConfigurable {
     @Override
     public boolean isModified() {
         ProjectSettingsState settings = ProjectSettingsState.getInstance(project);
+        AppSettingState appSettings = AppSettingState.getInstance();
+        if (mySettingsComponent.getRetentionMaxItems() != appSettings.retentionMaxItems.getValue() ||
+                mySettingsComponent.getRetentionMaxMegabytes() != appSettings.retentionMaxMegabytes.getValue() ||
+                mySettingsComponent.getRetentionMaxAgeMinutes() != appSettings.retentionMaxAgeMinutes.getValue() ||
+                mySettingsComponent.getSpillPayloadsToDisk() != appSettings.spillPayloadsToDisk.getValue()) {
+            return true;
+        }
+        for (TelemetryType type : TelemetryType.values()) {
+            if (mySettingsComponent.getRetentionQuota(type) != appSettings.getRetentionQuota(type).getValue()) {
+                return true;
+            }
+        }
         return mySettingsComponent.getCaseInsensitiveFiltering() != settings.caseInsensitiveFiltering.getValue();
     }
 
@@ -47,12 +60,30 @@ public class ProjectSettingsConfigurable implements SearchableConfigurable {
     public void apply() {
         ProjectSettingsState settings = ProjectSettingsState.getInstance(project);
         settings.caseInsensitiveFiltering.setValue(mySettingsComponent.getCaseInsensitiveFiltering());
+
+        AppSettingState appSettings = AppSettingState.getInstance();
+        appSettings.retentionMaxItems.setValue(mySettingsComponent.getRetentionMaxItems());
+        appSettings.retentionMaxMegabytes.setValue(mySettingsComponent.getRetentionMaxMegabytes());
+        appSettings.retentionMaxAgeMinutes.setValue(mySettingsComponent.getRetentionMaxAgeMinutes());
+        appSettings.spillPayloadsToDisk.setValue(mySettingsComponent.getSpillPayloadsToDisk());
+        for (TelemetryType type : TelemetryType.values()) {
+            appSettings.getRetentionQuota(type).setValue(mySettingsComponent.getRetentionQuota(type));
+        }
     }
 
     @Override
     public void reset() {
         ProjectSettingsState settings = ProjectSettingsState.getInstance(project);
         mySettingsComponent.setCaseInsensitiveFiltering(settings.caseInsensitiveFiltering.getValue());
+
+        AppSettingState appSettings = AppSettingState.getInstance();
+        mySettingsComponent.setRetentionMaxItems(appSettings.retentionMaxItems.getValue());
+        mySettingsComponent.setRetentionMaxMegabytes(appSettings.retentionMaxMegabytes.getValue());
+        mySettingsComponent.setRetentionMaxAgeMinutes(appSettings.retentionMaxAgeMinutes.getValue());
+        mySettingsComponent.setSpillPayloadsToDisk(appSettings.spillPayloadsToDisk.getValue());
+        for (TelemetryType type : TelemetryType.values()) {
+            mySettingsComponent.setRetentionQuota(type, appSettings.getRetentionQuota(type).getValue());
+        }
     }
 
     @Override
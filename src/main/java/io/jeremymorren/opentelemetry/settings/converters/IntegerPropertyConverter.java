@@ -0,0 +1,18 @@
+package io.jeremymorren.opentelemetry.settings.converters;
+
+import com.intellij.util.xmlb.Converter;
+import com.jetbrains.rd.util.reactive.Property;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class IntegerPropertyConverter extends Converter<Property<Integer>> {
+    @Override
+    public @Nullable Property<Integer> fromString(@NotNull String s) {
+        return new Property<>(Integer.parseInt(s));
+    }
+
+    @Override
+    public @Nullable String toString(@NotNull Property<Integer> integerProperty) {
+        return integerProperty.getValue().toString();
+    }
+}
@@ -0,0 +1,12 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives the items evicted from a {@link TelemetryStore}, with the position they had.
+ */
+@FunctionalInterface
+public interface EvictionListener {
+    void evicted(long position, @NotNull TelemetryItem item);
+}
@@ -0,0 +1,248 @@
+package io.jeremymorren.opentelemetry.store;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends payloads to session-scoped memory-mapped files under the IDE system directory.
+ * <p>
+ * Payloads are written to segments of {@link #SEGMENT_SIZE} bytes, each in its own file. Each payload is stored as
+ * its length followed by its UTF-8 bytes, and never spans two segments. A segment counts the payloads it holds that
+ * were not released: once it is full and all its payloads are released (their items were evicted from the session),
+ * its file is deleted and its mapping dropped, so disk usage follows the payloads still in the session.
+ * All files are deleted when the store is closed.
+ * <p>
+ * Thread safe.
+ */
+public final class MappedPayloadStore implements PayloadStore, Closeable {
+    private static final Logger LOG = Logger.getInstance(MappedPayloadStore.class);
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String FILE_SUFFIX = ".payloads";
+
+    /**
+     * Files left by sessions that were not closed (e.g. the IDE crashed) are deleted after this time
+     */
+    private static final long STALE_FILE_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @NotNull
+    private final Path directory;
+
+    /**
+     * Segments that hold payloads not released, by index. Guarded by {@code this}.
+     */
+    @NotNull
+    private final Map<Long, Segment> segments = new HashMap<>();
+
+    /**
+     * Offset of the next payload (segment indexes are never reused). Guarded by {@code this}.
+     */
+    private long writeOffset;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private boolean closed;
+
+    private MappedPayloadStore(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Create a store in the IDE system directory.
+     */
+    @NotNull
+    public static MappedPayloadStore create() throws IOException {
+        Path directory = Path.of(PathManager.getSystemPath(), "opentelemetry-debug-log-viewer");
+        Files.createDirectories(directory);
+        deleteStaleFiles(directory);
+        return new MappedPayloadStore(directory);
+    }
+
+    @Override
+    public synchronized long append(@NotNull String json) {
+        if (closed) {
+            return -1;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        int recordSize = Integer.BYTES + bytes.length;
+        if (recordSize > SEGMENT_SIZE) {
+            return -1;
+        }
+        int position = (int) (writeOffset % SEGMENT_SIZE);
+        if (position + recordSize > SEGMENT_SIZE) {
+            // Start a new segment
+            Segment full = segments.get(writeOffset / SEGMENT_SIZE);
+            writeOffset += SEGMENT_SIZE - position;
+            position = 0;
+            if (full != null && full.liveCount == 0) {
+                drop(full);
+            }
+        }
+        Segment segment;
+        try {
+            segment = getSegment(writeOffset / SEGMENT_SIZE);
+        } catch (IOException e) {
+            LOG.warn("Failed to map telemetry payload file in " + directory, e);
+            return -1;
+        }
+        segment.buffer.putInt(position, bytes.length);
+        segment.buffer.put(position + Integer.BYTES, bytes);
+        segment.liveCount++;
+
+        long ref = writeOffset;
+        writeOffset += recordSize;
+        return ref;
+    }
+
+    /**
+     * @throws IllegalStateException If the store is closed or the payload was released
+     */
+    @Override
+    @NotNull
+    public String read(long ref) {
+        Segment segment;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Telemetry payload store is closed");
+            }
+            segment = segments.get(ref / SEGMENT_SIZE);
+        }
+        if (segment == null) {
+            throw new IllegalStateException("Telemetry payload " + ref + " was released");
+        }
+        // Absolute reads do not change the buffer position, so they can run concurrently
+        int position = (int) (ref % SEGMENT_SIZE);
+        byte[] bytes = new byte[segment.buffer.getInt(position)];
+        segment.buffer.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void release(long ref) {
+        long index = ref / SEGMENT_SIZE;
+        Segment segment = segments.get(index);
+        if (segment == null) {
+            return;
+        }
+        segment.liveCount--;
+        // The segment being written is kept for the next payloads
+        if (segment.liveCount == 0 && index != writeOffset / SEGMENT_SIZE) {
+            drop(segment);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments.values().toArray(new Segment[0])) {
+            drop(segment);
+        }
+    }
+
+    @NotNull
+    private Segment getSegment(long index) throws IOException {
+        Segment segment = segments.get(index);
+        if (segment == null) {
+            segment = Segment.create(directory, index);
+            segments.put(index, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Delete the file of a segment. The mapping is released when the buffer is garbage collected.
+     */
+    private void drop(@NotNull Segment segment) {
+        segments.remove(segment.index);
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // The file can still be mapped (e.g. on Windows, until the buffer is garbage collected): it is deleted on exit
+            LOG.debug("Failed to delete telemetry payload file " + segment.path, e);
+        }
+    }
+
+    private static void deleteStaleFiles(@NotNull Path directory) {
+        long minModified = System.currentTimeMillis() - STALE_FILE_AGE_MILLIS;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < minModified) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Failed to delete stale telemetry payload files", e);
+        }
+    }
+
+    /**
+     * A segment file, mapped in memory
+     */
+    private static final class Segment {
+        private final long index;
+        @NotNull
+        private final Path path;
+        @NotNull
+        private final FileChannel channel;
+        @NotNull
+        private final MappedByteBuffer buffer;
+
+        /**
+         * Number of payloads not released. Guarded by the store.
+         */
+        private int liveCount;
+
+        private Segment(long index, @NotNull Path path, @NotNull FileChannel channel, @NotNull MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        @NotNull
+        static Segment create(@NotNull Path directory, long index) throws IOException {
+            Path path = Files.createTempFile(directory, "session-", FILE_SUFFIX);
+            // In case the store is never closed
+            path.toFile().deleteOnExit();
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                return new Segment(index, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+            } catch (IOException e) {
+                closeQuietly(channel);
+                Files.deleteIfExists(path);
+                throw e;
+            }
+        }
+
+        private static void closeQuietly(@Nullable FileChannel channel) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
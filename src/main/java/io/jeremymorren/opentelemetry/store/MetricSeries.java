@@ -0,0 +1,117 @@
+package io.jeremymorren.opentelemetry.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The values of a metric series over time, in primitive arrays.
+ * The latest {@link #MAX_HISTORY} values are kept, in a ring buffer, with the position in the store of the record
+ * of each value: the values of evicted records are trimmed (see {@link #evicted}).
+ */
+public final class MetricSeries {
+    private static final int INITIAL_CAPACITY = 16;
+    static final int MAX_HISTORY = 4_096;
+
+    @NotNull
+    private long[] times = new long[INITIAL_CAPACITY];
+    @NotNull
+    private double[] values = new double[INITIAL_CAPACITY];
+    @NotNull
+    private long[] positions = new long[INITIAL_CAPACITY];
+
+    /**
+     * Index of the oldest value
+     */
+    private int start;
+    private int count;
+
+    /**
+     * Add a value.
+     * @param time Time of the value (epoch nanos)
+     * @param position The position in the store of the record of the value (not before the previous one)
+     */
+    void add(long time, double value, long position) {
+        if (count == times.length) {
+            if (count == MAX_HISTORY) {
+                // Overwrite the oldest value
+                times[start] = time;
+                values[start] = value;
+                positions[start] = position;
+                start = (start + 1) % count;
+                return;
+            }
+            grow();
+        }
+        int index = (start + count) % times.length;
+        times[index] = time;
+        values[index] = value;
+        positions[index] = position;
+        count++;
+    }
+
+    /**
+     * Trim the values of the records at or before a position, evicted from the store.
+     */
+    void evicted(long position) {
+        while (count > 0 && positions[start] <= position) {
+            start = (start + 1) % times.length;
+            count--;
+        }
+    }
+
+    /**
+     * The number of values kept
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * The time of a value (epoch nanos), from 0 (the oldest) to {@link #getCount()} - 1 (the latest).
+     */
+    public long getTime(int index) {
+        return times[slot(index)];
+    }
+
+    /**
+     * A value, from 0 (the oldest) to {@link #getCount()} - 1 (the latest).
+     */
+    public double getValue(int index) {
+        return values[slot(index)];
+    }
+
+    public long getLatestTime() {
+        return getTime(count - 1);
+    }
+
+    public double getLatestValue() {
+        return getValue(count - 1);
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + count);
+        }
+        return (start + index) % times.length;
+    }
+
+    private void grow() {
+        int capacity = Math.min(times.length * 2, MAX_HISTORY);
+        long[] newTimes = new long[capacity];
+        double[] newValues = new double[capacity];
+        long[] newPositions = new long[capacity];
+        // Unwrap the ring
+        int first = Math.min(count, times.length - start);
+        System.arraycopy(times, start, newTimes, 0, first);
+        System.arraycopy(times, 0, newTimes, first, count - first);
+        System.arraycopy(values, start, newValues, 0, first);
+        System.arraycopy(values, 0, newValues, first, count - first);
+        System.arraycopy(positions, start, newPositions, 0, first);
+        System.arraycopy(positions, 0, newPositions, first, count - first);
+        times = newTimes;
+        values = newValues;
+        positions = newPositions;
+        start = 0;
+    }
+}
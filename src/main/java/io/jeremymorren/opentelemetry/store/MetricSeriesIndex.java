@@ -0,0 +1,112 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.models.IsoTimestamp;
+import io.jeremymorren.opentelemetry.models.Metric;
+import io.jeremymorren.opentelemetry.models.MetricPoint;
+import io.jeremymorren.opentelemetry.models.ObjectDictionary;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The metric series of a session, keyed by meter, metric name and tags.
+ * <p>
+ * Each metric record holds a point per tag set: its value is added to the series of the tag set,
+ * so the latest value and the history of a series are found without scanning the records.
+ * <p>
+ * The values of the records evicted from the store are trimmed from their series, and a series without values left
+ * is dropped (see {@link #evicted}).
+ * At most {@link #MAX_SERIES} series are kept: beyond that, the least recently used one is dropped.
+ * <p>
+ * Not thread safe.
+ */
+public final class MetricSeriesIndex {
+    /**
+     * Maximum number of series (each keeps up to {@link MetricSeries#MAX_HISTORY} values)
+     */
+    static final int MAX_SERIES = 1_024;
+
+    /**
+     * The series, in access order (the eldest is the least recently used)
+     */
+    @NotNull
+    private final Map<SeriesKey, MetricSeries> series = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SeriesKey, MetricSeries> eldest) {
+            return size() > MAX_SERIES;
+        }
+    };
+
+    /**
+     * The series added to by each record, in ascending position order
+     */
+    @NotNull
+    private final ArrayDeque<SeriesRecord> records = new ArrayDeque<>();
+
+    /**
+     * Add the points of a metric record to their series. Points without a value or an end time are ignored.
+     * @param position The position of the record in the store
+     */
+    public void add(@NotNull Metric metric, long position) {
+        if (metric.getPoints() == null) {
+            return;
+        }
+        for (MetricPoint point : metric.getPoints()) {
+            Double value = point.getValue();
+            long time = point.getEndTimeNanos();
+            if (value == null || time == IsoTimestamp.NONE) {
+                continue;
+            }
+            SeriesKey key = new SeriesKey(metric.getMeterName(), metric.getName(), point.getTags());
+            MetricSeries metricSeries = series.computeIfAbsent(key, k -> new MetricSeries());
+            metricSeries.add(time, value, position);
+            records.addLast(new SeriesRecord(position, key, metricSeries));
+        }
+    }
+
+    /**
+     * Trim the values of the records evicted from the store from their series, and drop the series left empty.
+     * Metric records are evicted oldest first: the records at or before the position are no longer in the store.
+     * @param position The position of an evicted metric record
+     */
+    public void evicted(long position) {
+        while (!records.isEmpty() && records.peekFirst().position() <= position) {
+            SeriesRecord record = records.removeFirst();
+            MetricSeries metricSeries = record.series();
+            metricSeries.evicted(position);
+            // Not looked up by key, which would count as a use of the series
+            if (metricSeries.getCount() == 0) {
+                series.remove(record.key(), metricSeries);
+            }
+        }
+    }
+
+    /**
+     * The series of a tag set of a metric, or null if no value was recorded.
+     */
+    @Nullable
+    public MetricSeries get(@Nullable String meterName, @Nullable String name, @Nullable ObjectDictionary tags) {
+        return series.get(new SeriesKey(meterName, name, tags));
+    }
+
+    /**
+     * The number of series
+     */
+    public int size() {
+        return series.size();
+    }
+
+    public void clear() {
+        series.clear();
+        records.clear();
+    }
+
+    private record SeriesKey(@Nullable String meterName, @Nullable String name, @Nullable ObjectDictionary tags) {
+    }
+
+    private record SeriesRecord(long position, @NotNull SeriesKey key, @NotNull MetricSeries series) {
+    }
+}
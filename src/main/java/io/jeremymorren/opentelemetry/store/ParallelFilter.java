@@ -0,0 +1,99 @@
+package io.jeremymorren.opentelemetry.store;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Filters a range of indexes, in chunks on the {@link QueryPool query pool} when the range is large.
+ * The accepted indexes are returned in ascending order, whichever way they were computed.
+ */
+final class ParallelFilter {
+    /**
+     * Ranges shorter than this are filtered on the calling thread
+     */
+    private static final int PARALLEL_THRESHOLD = 16_384;
+
+    /**
+     * Number of indexes filtered by each task
+     */
+    private static final int CHUNK_SIZE = 4_096;
+
+    /**
+     * A test of an index. Must be safe to call from several threads at once.
+     */
+    interface IndexTest {
+        boolean test(int index);
+    }
+
+    private ParallelFilter() {
+    }
+
+    /**
+     * Find the indexes in {@code [0, count)} that pass the test.
+     * Checks for cancellation of the current progress indicator.
+     * @return The accepted indexes in ascending order
+     */
+    @NotNull
+    static int[] filter(int count, @NotNull IndexTest test) {
+        if (count < PARALLEL_THRESHOLD) {
+            return filterRange(0, count, test, null);
+        }
+        // Workers do not inherit the progress indicator of the calling thread
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        return QueryPool.getPool().invoke(new FilterTask(0, count, test, indicator));
+    }
+
+    @NotNull
+    private static int[] filterRange(int from, int to, @NotNull IndexTest test, @Nullable ProgressIndicator indicator) {
+        int[] accepted = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (indicator != null) {
+                indicator.checkCanceled();
+            } else {
+                ProgressManager.checkCanceled();
+            }
+            if (test.test(i)) {
+                accepted[count++] = i;
+            }
+        }
+        return count == accepted.length ? accepted : Arrays.copyOf(accepted, count);
+    }
+
+    private static final class FilterTask extends RecursiveTask<int[]> {
+        private final int from;
+        private final int to;
+        @NotNull
+        private final IndexTest test;
+        @Nullable
+        private final ProgressIndicator indicator;
+
+        FilterTask(int from, int to, @NotNull IndexTest test, @Nullable ProgressIndicator indicator) {
+            this.from = from;
+            this.to = to;
+            this.test = test;
+            this.indicator = indicator;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= CHUNK_SIZE) {
+                return filterRange(from, to, test, indicator);
+            }
+            int middle = (from + to) >>> 1;
+            FilterTask right = new FilterTask(middle, to, test, indicator);
+            right.fork();
+            int[] leftResult = new FilterTask(from, middle, test, indicator).compute();
+            int[] rightResult = right.join();
+
+            int[] result = Arrays.copyOf(leftResult, leftResult.length + rightResult.length);
+            System.arraycopy(rightResult, 0, result, leftResult.length, rightResult.length);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package io.jeremymorren.opentelemetry.store;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Stores telemetry JSON payloads outside the Java heap.
+ */
+public interface PayloadStore {
+    /**
+     * Append a payload.
+     * @return A reference to read the payload back, or -1 if the payload could not be stored (it must be kept on the heap)
+     */
+    long append(@NotNull String json);
+
+    /**
+     * Read back a payload.
+     * @param ref The reference returned by {@link #append(String)}
+     * @throws IllegalStateException If the payload can no longer be read (the store is closed or the payload was released)
+     */
+    @NotNull
+    String read(long ref);
+
+    /**
+     * Release a payload that will no longer be read, so that its space can be reclaimed.
+     * @param ref The reference returned by {@link #append(String)}
+     */
+    void release(long ref);
+}
@@ -0,0 +1,280 @@
+package io.jeremymorren.opentelemetry.store;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A set of store positions, as a bitmap split in chunks of {@link #CHUNK_BITS} positions.
+ * <p>
+ * Only chunks holding positions are kept, in a directory sorted by chunk index: chunks are dropped once their last
+ * position is cleared, so the size of a bitmap depends on the number of positions it holds, not on their range
+ * (a store can keep a few old items among many recent ones).
+ * Set operations work a 64-bit word at a time.
+ */
+final class PositionBitmap {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_BITS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_WORDS = CHUNK_BITS / Long.SIZE;
+
+    /**
+     * The indexes of the chunks, in ascending order
+     */
+    @NotNull
+    private long[] indexes = new long[4];
+
+    /**
+     * The words of the chunks (null once a chunk is empty, until the directory is compacted)
+     */
+    @NotNull
+    private long[][] chunks = new long[4][];
+
+    /**
+     * Number of entries of the directory
+     */
+    private int count;
+
+    /**
+     * Number of entries of the directory whose chunk is null
+     */
+    private int emptyCount;
+
+    void set(long position) {
+        long chunk = position >>> CHUNK_SHIFT;
+        int index = find(chunk);
+        if (index < 0) {
+            index = insert(-index - 1, chunk);
+        }
+        if (chunks[index] == null) {
+            chunks[index] = new long[CHUNK_WORDS];
+            emptyCount--;
+        }
+        int bit = (int) (position & (CHUNK_BITS - 1));
+        chunks[index][bit >>> 6] |= 1L << bit;
+    }
+
+    void clear(long position) {
+        int index = find(position >>> CHUNK_SHIFT);
+        if (index < 0 || chunks[index] == null) {
+            return;
+        }
+        long[] words = chunks[index];
+        int bit = (int) (position & (CHUNK_BITS - 1));
+        words[bit >>> 6] &= ~(1L << bit);
+        if (words[bit >>> 6] == 0 && isEmpty(words)) {
+            chunks[index] = null;
+            emptyCount++;
+            if (emptyCount > count / 2) {
+                compact();
+            }
+        }
+    }
+
+    boolean get(long position) {
+        long[] words = getChunk(position >>> CHUNK_SHIFT);
+        if (words == null) {
+            return false;
+        }
+        int bit = (int) (position & (CHUNK_BITS - 1));
+        return (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Drop the chunks that only hold positions before {@code position}.
+     * The bits before the position in the remaining first chunk must already be cleared.
+     */
+    void trimBefore(long position) {
+        int index = find(position >>> CHUNK_SHIFT);
+        int drop = index < 0 ? -index - 1 : index;
+        if (drop == 0) {
+            return;
+        }
+        for (int i = 0; i < drop; i++) {
+            if (chunks[i] == null) {
+                emptyCount--;
+            }
+        }
+        System.arraycopy(indexes, drop, indexes, 0, count - drop);
+        System.arraycopy(chunks, drop, chunks, 0, count - drop);
+        Arrays.fill(chunks, count - drop, count, null);
+        count -= drop;
+    }
+
+    void clear() {
+        indexes = new long[4];
+        chunks = new long[4][];
+        count = 0;
+        emptyCount = 0;
+    }
+
+    /**
+     * Add the positions of another bitmap to this one.
+     */
+    void or(@NotNull PositionBitmap other) {
+        long[] newIndexes = new long[count + other.count];
+        long[][] newChunks = new long[count + other.count][];
+        int newCount = 0;
+        int i = 0;
+        int j = 0;
+        while (i < count || j < other.count) {
+            long[] words;
+            long chunk;
+            if (j >= other.count || (i < count && indexes[i] < other.indexes[j])) {
+                chunk = indexes[i];
+                words = chunks[i++];
+            } else if (i >= count || other.indexes[j] < indexes[i]) {
+                chunk = other.indexes[j];
+                words = other.chunks[j++] == null ? null : other.chunks[j - 1].clone();
+            } else {
+                chunk = indexes[i];
+                words = chunks[i++];
+                long[] otherWords = other.chunks[j++];
+                if (words == null) {
+                    words = otherWords == null ? null : otherWords.clone();
+                } else if (otherWords != null) {
+                    for (int w = 0; w < CHUNK_WORDS; w++) {
+                        words[w] |= otherWords[w];
+                    }
+                }
+            }
+            if (words != null) {
+                newIndexes[newCount] = chunk;
+                newChunks[newCount++] = words;
+            }
+        }
+        indexes = newIndexes;
+        chunks = newChunks;
+        count = newCount;
+        emptyCount = 0;
+    }
+
+    /**
+     * Keep the positions that are (or, if {@code negate}, are not) in another bitmap.
+     */
+    void and(@NotNull PositionBitmap other, boolean negate) {
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            long[] words = chunks[i];
+            if (words == null) {
+                continue;
+            }
+            while (j < other.count && other.indexes[j] < indexes[i]) {
+                j++;
+            }
+            long[] otherWords = j < other.count && other.indexes[j] == indexes[i] ? other.chunks[j] : null;
+            if (otherWords == null) {
+                if (!negate) {
+                    chunks[i] = null;
+                    emptyCount++;
+                }
+                continue;
+            }
+            for (int w = 0; w < CHUNK_WORDS; w++) {
+                words[w] &= negate ? ~otherWords[w] : otherWords[w];
+            }
+        }
+    }
+
+    /**
+     * The positions in {@code [from, to)}, in ascending order.
+     */
+    @NotNull
+    long[] toPositions(long from, long to) {
+        long[] positions = new long[64];
+        int positionCount = 0;
+        for (int i = 0; i < count; i++) {
+            long[] words = chunks[i];
+            if (words == null) {
+                continue;
+            }
+            long base = indexes[i] << CHUNK_SHIFT;
+            for (int w = 0; w < CHUNK_WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    long position = base + ((long) w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (position < from || position >= to) {
+                        continue;
+                    }
+                    if (positionCount == positions.length) {
+                        positions = Arrays.copyOf(positions, positionCount * 2);
+                    }
+                    positions[positionCount++] = position;
+                }
+            }
+        }
+        return Arrays.copyOf(positions, positionCount);
+    }
+
+    @NotNull
+    PositionBitmap copy() {
+        PositionBitmap copy = new PositionBitmap();
+        copy.or(this);
+        return copy;
+    }
+
+    @Nullable
+    private long[] getChunk(long chunk) {
+        int index = find(chunk);
+        return index >= 0 ? chunks[index] : null;
+    }
+
+    /**
+     * Find a chunk in the directory.
+     * @return The index of the chunk, or {@code -(insertion point) - 1} if it is not in the directory
+     */
+    private int find(long chunk) {
+        // Positions are mostly set and read near the tail of the store
+        if (count > 0 && indexes[count - 1] == chunk) {
+            return count - 1;
+        }
+        if (count == 0 || indexes[count - 1] < chunk) {
+            return -count - 1;
+        }
+        return Arrays.binarySearch(indexes, 0, count, chunk);
+    }
+
+    /**
+     * Insert an empty chunk in the directory.
+     * @return The index of the chunk
+     */
+    private int insert(int index, long chunk) {
+        if (count == indexes.length) {
+            indexes = Arrays.copyOf(indexes, count * 2);
+            chunks = Arrays.copyOf(chunks, count * 2);
+        }
+        System.arraycopy(indexes, index, indexes, index + 1, count - index);
+        System.arraycopy(chunks, index, chunks, index + 1, count - index);
+        indexes[index] = chunk;
+        chunks[index] = null;
+        count++;
+        emptyCount++;
+        return index;
+    }
+
+    /**
+     * Remove the empty chunks from the directory
+     */
+    private void compact() {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (chunks[i] != null) {
+                indexes[kept] = indexes[i];
+                chunks[kept++] = chunks[i];
+            }
+        }
+        Arrays.fill(chunks, kept, count, null);
+        count = kept;
+        emptyCount = 0;
+    }
+
+    private static boolean isEmpty(@NotNull long[] words) {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+package io.jeremymorren.opentelemetry.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorting of slot references by a primitive key column, without boxing.
+ */
+public final class PrimitiveSort {
+    /**
+     * Runs shorter than this are sorted by insertion sort
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    /**
+     * Runs shorter than this are sorted on a single thread
+     */
+    private static final int PARALLEL_THRESHOLD = 16_384;
+
+    private PrimitiveSort() {
+    }
+
+    /**
+     * Stable sort of references by key (equal keys keep their relative order).
+     * @param refs The references to sort (indexes into {@code keys})
+     * @param length The number of references to sort
+     * @param keys The key column
+     */
+    public static void sortByKey(@NotNull int[] refs, int length, @NotNull long[] keys) {
+        if (length < 2) {
+            return;
+        }
+        int[] buffer = refs.clone();
+        mergeSort(buffer, refs, 0, length, keys);
+    }
+
+    /**
+     * Like {@link #sortByKey(int[], int, long[])}, but large inputs are sorted on the query pool of the store
+     * (see {@link QueryPool}): the halves are sorted in parallel, then merged.
+     */
+    public static void parallelSortByKey(@NotNull int[] refs, int length, @NotNull long[] keys) {
+        if (length < PARALLEL_THRESHOLD) {
+            sortByKey(refs, length, keys);
+            return;
+        }
+        int[] buffer = refs.clone();
+        QueryPool.getPool().invoke(new SortTask(buffer, refs, 0, length, keys));
+    }
+
+    /**
+     * Sort {@code source[from, to)} into {@code target[from, to)}. Both arrays must hold the same values on entry.
+     */
+    static void mergeSort(@NotNull int[] source, @NotNull int[] target, int from, int to, @NotNull long[] keys) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(target, from, to, keys);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        // Sort each half of target into source, then merge them back into target
+        mergeSort(target, source, from, middle, keys);
+        mergeSort(target, source, middle, to, keys);
+        merge(source, target, from, middle, to, keys);
+    }
+
+    /**
+     * Merge the sorted runs {@code source[from, middle)} and {@code source[middle, to)} into {@code target[from, to)}.
+     */
+    static void merge(@NotNull int[] source, @NotNull int[] target, int from, int middle, int to, @NotNull long[] keys) {
+        if (keys[source[middle - 1]] <= keys[source[middle]]) {
+            // Already in order
+            System.arraycopy(source, from, target, from, to - from);
+            return;
+        }
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && keys[source[left]] <= keys[source[right]])) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+
+    private static void insertionSort(@NotNull int[] refs, int from, int to, @NotNull long[] keys) {
+        for (int i = from + 1; i < to; i++) {
+            int ref = refs[i];
+            long key = keys[ref];
+            int j = i - 1;
+            while (j >= from && keys[refs[j]] > key) {
+                refs[j + 1] = refs[j];
+                j--;
+            }
+            refs[j + 1] = ref;
+        }
+    }
+
+    /**
+     * {@link #mergeSort(int[], int[], int, int, long[])} with the halves of large runs sorted in parallel
+     */
+    private static final class SortTask extends RecursiveAction {
+        @NotNull
+        private final int[] source;
+        @NotNull
+        private final int[] target;
+        private final int from;
+        private final int to;
+        @NotNull
+        private final long[] keys;
+
+        SortTask(@NotNull int[] source, @NotNull int[] target, int from, int to, @NotNull long[] keys) {
+            this.source = source;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+            this.keys = keys;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < PARALLEL_THRESHOLD) {
+                mergeSort(source, target, from, to, keys);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new SortTask(target, source, from, middle, keys),
+                    new SortTask(target, source, middle, to, keys));
+            merge(source, target, from, middle, to, keys);
+        }
+    }
+}
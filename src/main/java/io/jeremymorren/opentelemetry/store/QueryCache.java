@@ -0,0 +1,105 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import io.jeremymorren.opentelemetry.search.TextMatcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Remembers the results of recent text queries over a {@link TelemetryStore}, to answer the next query incrementally.
+ * Queries run on {@link TelemetrySnapshot snapshots} of the store.
+ * <p>
+ * A result is the positions of the matching items, and the store position it covers up to.
+ * Store positions are never reused, so a result stays valid: only evicted positions must be skipped,
+ * and items added since must be checked.
+ * <ul>
+ *     <li>A repeated query (e.g. after a backspace) reuses its result.</li>
+ *     <li>A query containing a previous query (e.g. when the filter is extended) only checks the previous matches.</li>
+ *     <li>Otherwise, the candidates are found with the {@link TrigramIndex}.</li>
+ * </ul>
+ * Not thread safe: it must be confined to the thread that runs the queries.
+ */
+public final class QueryCache {
+    private static final int CAPACITY = 8;
+
+    @NotNull
+    private final Map<Key, Result> results = new LinkedHashMap<>(CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * Find the positions of the items whose JSON matches.
+     * @return The matching positions in ascending order
+     */
+    @NotNull
+    public long[] find(@NotNull TelemetrySnapshot snapshot, @NotNull TrigramIndex index, @NotNull TextMatcher matcher) {
+        Key key = new Key(matcher.getPattern(), matcher.isIgnoreCase());
+        Predicate<TelemetryItem> predicate = t -> matcher.matches(t.getJson());
+
+        long[] matches;
+        Result cached = results.get(key);
+        Result narrowed = cached == null ? findContained(key) : null;
+        if (cached != null) {
+            matches = concat(
+                    snapshot.match(cached.positions, null), snapshot.matchFrom(cached.coveredTo, predicate));
+        } else if (narrowed != null) {
+            matches = concat(
+                    snapshot.match(narrowed.positions, predicate), snapshot.matchFrom(narrowed.coveredTo, predicate));
+        } else {
+            long[] candidates = index.findCandidates(snapshot, key.pattern);
+            matches = candidates != null
+                    ? snapshot.match(candidates, predicate)
+                    : snapshot.matchFrom(snapshot.getHead(), predicate);
+        }
+        results.put(key, new Result(matches, snapshot.getTail()));
+        return matches;
+    }
+
+    public void clear() {
+        results.clear();
+    }
+
+    /**
+     * The smallest result of a query whose pattern is contained in the pattern (its matches are a superset)
+     */
+    @Nullable
+    private Result findContained(@NotNull Key key) {
+        Result best = null;
+        for (Map.Entry<Key, Result> entry : results.entrySet()) {
+            Key other = entry.getKey();
+            if (other.ignoreCase == key.ignoreCase && key.pattern.contains(other.pattern) &&
+                    (best == null || entry.getValue().positions.length < best.positions.length)) {
+                best = entry.getValue();
+            }
+        }
+        return best;
+    }
+
+    @NotNull
+    private static long[] concat(@NotNull long[] first, @NotNull long[] second) {
+        if (second.length == 0) {
+            return first;
+        }
+        long[] result = new long[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private record Key(@NotNull String pattern, boolean ignoreCase) {
+    }
+
+    /**
+     * @param positions The matching positions in ascending order
+     * @param coveredTo Items at or after this position have not been checked
+     */
+    private record Result(@NotNull long[] positions, long coveredTo) {
+    }
+}
@@ -0,0 +1,42 @@
+package io.jeremymorren.opentelemetry.store;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Owner of the pool of the parallel filters and sorts of the store.
+ * The pool is bounded, and leaves a core to the IDE, so that a large query does not compete with the common pool
+ * used by the platform. It is shut down with the application service, e.g. when the plugin is unloaded.
+ */
+public final class QueryPool implements Disposable {
+    /**
+     * Maximum number of worker threads of the pool
+     */
+    private static final int MAX_PARALLELISM = 4;
+
+    @NotNull
+    private final ForkJoinPool pool = new ForkJoinPool(
+            Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors() - 1)),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("OpenTelemetry Query " + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            },
+            null,
+            false);
+
+    @NotNull
+    static ForkJoinPool getPool() {
+        return ApplicationManager.getApplication().getService(QueryPool.class).pool;
+    }
+
+    @Override
+    public void dispose() {
+        pool.shutdownNow();
+    }
+}
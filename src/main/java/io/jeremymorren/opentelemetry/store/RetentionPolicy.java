@@ -0,0 +1,49 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.models.TelemetryType;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Limits on the telemetry kept by a session. A limit of 0 means unlimited.
+ */
+public final class RetentionPolicy {
+    /**
+     * No limits
+     */
+    public static final RetentionPolicy UNLIMITED = new RetentionPolicy(0, 0, 0, new int[TelemetryType.values().length]);
+
+    private final int maxItems;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    @NotNull
+    private final int[] typeQuotas;
+
+    /**
+     * @param maxItems Maximum number of items
+     * @param maxBytes Maximum estimated size of all items
+     * @param maxAgeMillis Maximum time an item is kept after it was received
+     * @param typeQuotas Maximum number of items of each type, indexed by {@link TelemetryType#ordinal()}
+     */
+    public RetentionPolicy(int maxItems, long maxBytes, long maxAgeMillis, @NotNull int[] typeQuotas) {
+        this.maxItems = maxItems;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.typeQuotas = typeQuotas.clone();
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public int getTypeQuota(@NotNull TelemetryType type) {
+        return typeQuotas[type.ordinal()];
+    }
+}
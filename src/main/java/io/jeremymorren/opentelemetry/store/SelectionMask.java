@@ -0,0 +1,48 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.models.LogLevel;
+import io.jeremymorren.opentelemetry.models.TelemetryType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Conditions on the indexed fields of the items of a {@link TelemetryStore}, evaluated with its bitmaps.
+ */
+public final class SelectionMask {
+    @NotNull
+    private final boolean[] types;
+    @Nullable
+    private final boolean[] levels;
+    @Nullable
+    private final Boolean error;
+
+    /**
+     * @param types Types to include, indexed by {@link TelemetryType#ordinal()},
+     *              followed by an entry for the items without a type
+     * @param levels Log levels to include, indexed by {@link LogLevel#ordinal()} (items without a level are excluded),
+     *               or null to include all items
+     * @param error Error status to include, or null to include all items
+     */
+    public SelectionMask(@NotNull boolean[] types, @Nullable boolean[] levels, @Nullable Boolean error) {
+        if (types.length != TelemetryType.values().length + 1) {
+            throw new IllegalArgumentException("Expected an entry per type and one for items without a type");
+        }
+        this.types = types.clone();
+        this.levels = levels != null ? levels.clone() : null;
+        this.error = error;
+    }
+
+    public boolean isTypeIncluded(int index) {
+        return types[index];
+    }
+
+    @Nullable
+    public boolean[] getLevels() {
+        return levels != null ? levels.clone() : null;
+    }
+
+    @Nullable
+    public Boolean getError() {
+        return error;
+    }
+}
@@ -0,0 +1,287 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import io.jeremymorren.opentelemetry.settings.FilterTelemetryMode;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Store positions ordered by a primitive key (e.g. the timestamp or duration in nanoseconds), then by position,
+ * with O(log n) insertion, removal and access by rank.
+ * <p>
+ * The index is a treap (a binary search tree balanced by random priorities) where each node holds the size of its
+ * subtree, so that the rank of an entry is found while descending the tree. Nodes are stored in primitive arrays
+ * and referenced by index, and removed nodes are reused.
+ * <p>
+ * Not thread safe.
+ */
+public final class SortedPositionIndex {
+    private static final int NIL = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    @NotNull
+    private long[] keys;
+    @NotNull
+    private long[] positions;
+    @NotNull
+    private int[] priorities;
+    @NotNull
+    private int[] lefts;
+    @NotNull
+    private int[] rights;
+    @NotNull
+    private int[] sizes;
+
+    private int root = NIL;
+
+    /**
+     * Number of nodes allocated (used or free)
+     */
+    private int allocated;
+
+    /**
+     * First free node, free nodes are linked by {@link #rights}
+     */
+    private int free = NIL;
+
+    public SortedPositionIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private SortedPositionIndex(int capacity) {
+        capacity = Math.max(capacity, INITIAL_CAPACITY);
+        keys = new long[capacity];
+        positions = new long[capacity];
+        priorities = new int[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        sizes = new int[capacity];
+    }
+
+    /**
+     * Build an index from entries already in order, in O(n).
+     * @param keys The keys of the entries, in ascending order
+     * @param positions The positions of the entries, in ascending order for equal keys
+     * @param length The number of entries
+     */
+    @NotNull
+    public static SortedPositionIndex build(@NotNull long[] keys, @NotNull long[] positions, int length) {
+        SortedPositionIndex index = new SortedPositionIndex(length);
+        // Build the cartesian tree of the priorities: the right spine of the tree is kept on a stack,
+        // and the subtree of a node is complete once it leaves the spine
+        int[] spine = new int[length];
+        int depth = 0;
+        for (int i = 0; i < length; i++) {
+            int node = index.allocate(keys[i], positions[i]);
+            int last = NIL;
+            while (depth > 0 && index.priorities[spine[depth - 1]] < index.priorities[node]) {
+                last = spine[--depth];
+                index.update(last);
+            }
+            index.lefts[node] = last;
+            if (depth > 0) {
+                index.rights[spine[depth - 1]] = node;
+            }
+            spine[depth++] = node;
+        }
+        while (depth > 0) {
+            index.update(spine[--depth]);
+        }
+        if (length > 0) {
+            index.root = spine[0];
+        }
+        return index;
+    }
+
+    /**
+     * The key of an item in an index ordered by a mode (the same key for all items keeps arrival order).
+     */
+    public static long sortKey(@NotNull TelemetryItem item, @NotNull FilterTelemetryMode mode) {
+        return switch (mode) {
+            case Timestamp -> item.getTimestampNanos();
+            case Duration -> item.getDurationNanos();
+            default -> 0;
+        };
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Add an entry.
+     * @return The rank of the entry
+     */
+    public int insert(long key, long position) {
+        int rank = rankOf(key, position);
+        int node = allocate(key, position);
+        long split = split(root, rank);
+        root = merge(merge(left(split), node), right(split));
+        return rank;
+    }
+
+    /**
+     * Remove an entry.
+     * @return The rank the entry had, or -1 if it is not in the index
+     */
+    public int remove(long key, long position) {
+        int rank = rankOf(key, position);
+        if (rank >= size() || positionAt(rank) != position) {
+            return -1;
+        }
+        long split = split(root, rank);
+        long rest = split(right(split), 1);
+        release(left(rest));
+        root = merge(left(split), right(rest));
+        return rank;
+    }
+
+    /**
+     * The position of the entry at a rank.
+     */
+    public long positionAt(int rank) {
+        if (rank < 0 || rank >= size()) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " out of " + size());
+        }
+        int node = root;
+        while (true) {
+            int leftSize = size(lefts[node]);
+            if (rank < leftSize) {
+                node = lefts[node];
+            } else if (rank == leftSize) {
+                return positions[node];
+            } else {
+                rank -= leftSize + 1;
+                node = rights[node];
+            }
+        }
+    }
+
+    public void clear() {
+        root = NIL;
+        allocated = 0;
+        free = NIL;
+    }
+
+    /**
+     * The number of entries before (key, position)
+     */
+    private int rankOf(long key, long position) {
+        int rank = 0;
+        int node = root;
+        while (node != NIL) {
+            if (compare(keys[node], positions[node], key, position) < 0) {
+                rank += size(lefts[node]) + 1;
+                node = rights[node];
+            } else {
+                node = lefts[node];
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Split a tree into its first {@code count} entries and the others.
+     * @return Both trees, see {@link #left(long)} and {@link #right(long)}
+     */
+    private long split(int node, int count) {
+        if (node == NIL) {
+            return pair(NIL, NIL);
+        }
+        int leftSize = size(lefts[node]);
+        if (count <= leftSize) {
+            long split = split(lefts[node], count);
+            lefts[node] = right(split);
+            update(node);
+            return pair(left(split), node);
+        } else {
+            long split = split(rights[node], count - leftSize - 1);
+            rights[node] = left(split);
+            update(node);
+            return pair(node, right(split));
+        }
+    }
+
+    /**
+     * Concatenate two trees (all entries of {@code left} are before those of {@code right}).
+     */
+    private int merge(int left, int right) {
+        if (left == NIL) {
+            return right;
+        }
+        if (right == NIL) {
+            return left;
+        }
+        if (priorities[left] >= priorities[right]) {
+            rights[left] = merge(rights[left], right);
+            update(left);
+            return left;
+        } else {
+            lefts[right] = merge(left, lefts[right]);
+            update(right);
+            return right;
+        }
+    }
+
+    private void update(int node) {
+        sizes[node] = 1 + size(lefts[node]) + size(rights[node]);
+    }
+
+    private int size(int node) {
+        return node == NIL ? 0 : sizes[node];
+    }
+
+    private int allocate(long key, long position) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = rights[node];
+        } else {
+            if (allocated == keys.length) {
+                grow();
+            }
+            node = allocated++;
+        }
+        keys[node] = key;
+        positions[node] = position;
+        priorities[node] = ThreadLocalRandom.current().nextInt();
+        lefts[node] = NIL;
+        rights[node] = NIL;
+        sizes[node] = 1;
+        return node;
+    }
+
+    private void release(int node) {
+        rights[node] = free;
+        free = node;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+    }
+
+    private static int compare(long key1, long position1, long key2, long position2) {
+        int result = Long.compare(key1, key2);
+        return result != 0 ? result : Long.compare(position1, position2);
+    }
+
+    private static long pair(int left, int right) {
+        return ((long) left << 32) | (right & 0xFFFFFFFFL);
+    }
+
+    private static int left(long pair) {
+        return (int) (pair >> 32);
+    }
+
+    private static int right(long pair) {
+        return (int) pair;
+    }
+}
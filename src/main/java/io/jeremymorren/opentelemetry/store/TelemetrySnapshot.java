@@ -0,0 +1,178 @@
+package io.jeremymorren.opentelemetry.store;
+
+import com.intellij.openapi.progress.ProgressManager;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import io.jeremymorren.opentelemetry.settings.FilterTelemetryMode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * The items of a {@link TelemetryStore} at a point in time, with the positions matching a selection and the sort
+ * key of each item, taken under the lock of the store (see {@link TelemetryStore#snapshot}) and queried without it.
+ * <p>
+ * Queries of large snapshots are split across threads (see {@link ParallelFilter}), so filters passed to a snapshot
+ * must be thread safe. Items evicted from the store after the snapshot was taken are still returned:
+ * they must be skipped when the result is displayed.
+ */
+public final class TelemetrySnapshot {
+    /**
+     * Positions of the items, in ascending order
+     */
+    @NotNull
+    private final long[] positions;
+    @NotNull
+    private final TelemetryItem[] items;
+
+    /**
+     * Sort key of each item, or null to keep arrival order
+     */
+    @Nullable
+    private final long[] keys;
+
+    /**
+     * Positions of the items matching the selection
+     */
+    @NotNull
+    private final PositionBitmap selection;
+    private final long head;
+    private final long tail;
+
+    TelemetrySnapshot(
+            @NotNull long[] positions,
+            @NotNull TelemetryItem[] items,
+            @Nullable long[] keys,
+            @NotNull PositionBitmap selection,
+            long head,
+            long tail) {
+        this.positions = positions;
+        this.items = items;
+        this.keys = keys;
+        this.selection = selection;
+        this.head = head;
+        this.tail = tail;
+    }
+
+    /**
+     * Select the items to display, as an index in the order of the mode of the snapshot.
+     * The index is built on the calling thread, from the sort keys of the snapshot.
+     * Large selections are filtered and sorted in parallel, keeping arrival order for equal keys.
+     * Checks for cancellation with {@link ProgressManager#checkCanceled()}.
+     * @param candidates Positions to check in ascending order (positions not in the snapshot are skipped),
+     *                   or null to check all items (e.g. found by a {@link TrigramIndex})
+     * @param filter Additional filter, or null to include all items matching the selection
+     */
+    @NotNull
+    public SortedPositionIndex selectIndex(@Nullable long[] candidates, @Nullable Predicate<TelemetryItem> filter) {
+        long[] selected;
+        if (candidates != null) {
+            int[] accepted = ParallelFilter.filter(candidates.length, i -> selection.get(candidates[i]));
+            selected = new long[accepted.length];
+            for (int i = 0; i < accepted.length; i++) {
+                selected[i] = candidates[accepted[i]];
+            }
+        } else {
+            selected = selection.toPositions(head, tail);
+        }
+        if (filter != null) {
+            selected = match(selected, filter);
+        }
+
+        int count = selected.length;
+        // Without sort keys, all items have the same key: arrival order
+        long[] selectedKeys = new long[count];
+        if (keys != null) {
+            int[] indexes = new int[count];
+            for (int i = 0; i < count; i++) {
+                indexes[i] = indexOf(selected[i]);
+            }
+            PrimitiveSort.parallelSortByKey(indexes, count, keys);
+            for (int i = 0; i < count; i++) {
+                selected[i] = positions[indexes[i]];
+                selectedKeys[i] = keys[indexes[i]];
+            }
+        }
+        ProgressManager.checkCanceled();
+        return SortedPositionIndex.build(selectedKeys, selected, count);
+    }
+
+    /**
+     * Find the positions of the candidates that are in the snapshot and match a filter.
+     * @param candidates Positions in ascending order
+     * @param filter The filter, or null to only skip positions not in the snapshot
+     * @return The matching positions in ascending order
+     */
+    @NotNull
+    public long[] match(@NotNull long[] candidates, @Nullable Predicate<TelemetryItem> filter) {
+        int[] accepted = ParallelFilter.filter(candidates.length, i -> {
+            TelemetryItem item = get(candidates[i]);
+            return item != null && (filter == null || filter.test(item));
+        });
+        long[] matches = new long[accepted.length];
+        for (int i = 0; i < accepted.length; i++) {
+            matches[i] = candidates[accepted[i]];
+        }
+        return matches;
+    }
+
+    /**
+     * Find the positions of the items at or after a position that match a filter.
+     * @return The matching positions in ascending order
+     */
+    @NotNull
+    public long[] matchFrom(long from, @NotNull Predicate<TelemetryItem> filter) {
+        int start = lowerBound(from);
+        int[] accepted = ParallelFilter.filter(positions.length - start, i -> filter.test(items[start + i]));
+        long[] matches = new long[accepted.length];
+        for (int i = 0; i < accepted.length; i++) {
+            matches[i] = positions[start + accepted[i]];
+        }
+        return matches;
+    }
+
+    /**
+     * The item at a position, or null if it is not in the snapshot.
+     */
+    @Nullable
+    public TelemetryItem get(long position) {
+        int index = indexOf(position);
+        return index >= 0 ? items[index] : null;
+    }
+
+    /**
+     * Position of the oldest item of the store
+     */
+    public long getHead() {
+        return head;
+    }
+
+    /**
+     * Position of the next item of the store: later items are not in the snapshot
+     */
+    public long getTail() {
+        return tail;
+    }
+
+    private int indexOf(long position) {
+        if (position < head || position >= tail) {
+            return -1;
+        }
+        // Unless items of a type were evicted by a quota, positions follow each other
+        long offset = position - head;
+        if (offset < positions.length && positions[(int) offset] == position) {
+            return (int) offset;
+        }
+        int index = Arrays.binarySearch(positions, position);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * The index of the first item at or after a position
+     */
+    private int lowerBound(long position) {
+        int index = Arrays.binarySearch(positions, position);
+        return index >= 0 ? index : -index - 1;
+    }
+}
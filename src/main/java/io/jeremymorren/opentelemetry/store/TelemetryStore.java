@@ -0,0 +1,513 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.models.LogLevel;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import io.jeremymorren.opentelemetry.models.TelemetryType;
+import io.jeremymorren.opentelemetry.settings.FilterTelemetryMode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Telemetry kept by a session, in arrival order, with bounded retention.
+ * <p>
+ * Items are kept in a ring buffer of entries, with their position (the arrival order of the item).
+ * When the item count, estimated size or age limit of the {@link RetentionPolicy} is exceeded, items are evicted
+ * from the head. When a type quota is exceeded, the oldest item of that type is evicted, which leaves an empty entry
+ * that is skipped once the head reaches it. Each eviction is O(1).
+ * <p>
+ * The entries of the items still in the store are compacted when the ring is full but at most half of it is used,
+ * so that an old item that is not evicted (e.g. of a type without a quota) does not make the ring grow without bound.
+ * Positions are not changed by compaction: the entry of a position is found by a binary search over the range of
+ * entries it can be in, which is a single entry until entries are compacted.
+ * <p>
+ * The fields used to sort are stored in primitive columns alongside the items
+ * (timestamp and duration in nanoseconds), so that sorts do not need to touch the items.
+ * Bitmaps of the positions of each type, of errors and of each log level are maintained as items are added and
+ * evicted, so that selecting by type, level or error status does not scan the store.
+ * <p>
+ * Not thread safe. Queries run on a {@link TelemetrySnapshot}, taken under the lock of the store and scanned without
+ * it, so that items can be added while a query runs.
+ */
+public final class TelemetryStore {
+    private static final int INITIAL_CAPACITY = 1_024;
+
+    /**
+     * Fixed estimated size of an item (object headers, references, timestamps)
+     */
+    private static final int ITEM_OVERHEAD = 256;
+
+    /**
+     * Estimated size of the trigram postings of an item, per char of JSON
+     */
+    private static final int TRIGRAM_BYTES_PER_CHAR = 2;
+
+    /**
+     * Estimated size of a value of a metric series
+     */
+    private static final int METRIC_VALUE_BYTES = 16;
+
+    @NotNull
+    private TelemetryItem[] items = new TelemetryItem[INITIAL_CAPACITY];
+    @NotNull
+    private long[] positions = new long[INITIAL_CAPACITY];
+    @NotNull
+    private long[] receivedTimes = new long[INITIAL_CAPACITY];
+    @NotNull
+    private int[] sizes = new int[INITIAL_CAPACITY];
+    @NotNull
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    @NotNull
+    private long[] durations = new long[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+
+    /**
+     * Entry of the oldest item (the entry is always occupied, unless the store is empty)
+     */
+    private long first;
+
+    /**
+     * Entry of the next item
+     */
+    private long end;
+
+    /**
+     * Position of the oldest item
+     */
+    private long head;
+
+    /**
+     * Position of the next item
+     */
+    private long tail;
+
+    private int size;
+    private long estimatedBytes;
+
+    @NotNull
+    private final int[] typeCounts = new int[TelemetryType.values().length];
+
+    /**
+     * Positions of the items of each type, oldest first
+     */
+    @NotNull
+    private final PositionQueue[] typePositions = new PositionQueue[TelemetryType.values().length];
+
+    /**
+     * Positions of the items of each type, followed by the items without a type
+     */
+    @NotNull
+    private final PositionBitmap[] typeBitmaps = new PositionBitmap[TelemetryType.values().length + 1];
+    @NotNull
+    private final PositionBitmap[] levelBitmaps = new PositionBitmap[LogLevel.values().length];
+    @NotNull
+    private final PositionBitmap errorBitmap = new PositionBitmap();
+
+    public TelemetryStore() {
+        for (int i = 0; i < typePositions.length; i++) {
+            typePositions[i] = new PositionQueue();
+        }
+        for (int i = 0; i < typeBitmaps.length; i++) {
+            typeBitmaps[i] = new PositionBitmap();
+        }
+        for (int i = 0; i < levelBitmaps.length; i++) {
+            levelBitmaps[i] = new PositionBitmap();
+        }
+    }
+
+    /**
+     * Add an item, then evict items as required by the retention policy.
+     * @param receivedTime Time the item was received (epoch millis)
+     * @param evicted Receives the evicted items (which may include the added item)
+     * @return The position of the item
+     */
+    public long add(
+            @NotNull TelemetryItem item,
+            long receivedTime,
+            @NotNull RetentionPolicy policy,
+            @NotNull EvictionListener evicted) {
+        if (end - first == items.length) {
+            if (size <= items.length / 2) {
+                compact();
+            } else {
+                grow();
+            }
+        }
+        int slot = slot(end++);
+        items[slot] = item;
+        positions[slot] = tail;
+        receivedTimes[slot] = receivedTime;
+        sizes[slot] = estimateSize(item);
+        timestamps[slot] = item.getTimestampNanos();
+        durations[slot] = item.getDurationNanos();
+        TelemetryType type = item.getType();
+        size++;
+        estimatedBytes += sizes[slot];
+
+        if (type != null) {
+            typeCounts[type.ordinal()]++;
+            typePositions[type.ordinal()].add(tail);
+        }
+        long position = tail;
+        setBits(position, item, true);
+        tail++;
+
+        if (type != null) {
+            int quota = policy.getTypeQuota(type);
+            while (quota > 0 && typeCounts[type.ordinal()] > quota) {
+                evict(entryOf(typePositions[type.ordinal()].peek()), evicted);
+            }
+        }
+        while ((policy.getMaxItems() > 0 && size > policy.getMaxItems()) ||
+                (policy.getMaxBytes() > 0 && estimatedBytes > policy.getMaxBytes())) {
+            evict(first, evicted);
+        }
+        evictExpired(receivedTime, policy, evicted);
+        return position;
+    }
+
+    /**
+     * Evict items older than the maximum age of the retention policy.
+     * @param now Current time (epoch millis)
+     * @param evicted Receives the evicted items
+     */
+    public void evictExpired(long now, @NotNull RetentionPolicy policy, @NotNull EvictionListener evicted) {
+        if (policy.getMaxAgeMillis() <= 0) {
+            return;
+        }
+        long minReceivedTime = now - policy.getMaxAgeMillis();
+        while (size > 0 && receivedTimes[slot(first)] < minReceivedTime) {
+            evict(first, evicted);
+        }
+    }
+
+    /**
+     * Iterate over the items in arrival order.
+     */
+    public void forEach(@NotNull Consumer<TelemetryItem> action) {
+        for (long entry = first; entry < end; entry++) {
+            TelemetryItem item = items[slot(entry)];
+            if (item != null) {
+                action.accept(item);
+            }
+        }
+    }
+
+    /**
+     * Take a snapshot of the items, to be queried without holding the lock of the store.
+     * Conditions on indexed fields are evaluated with the bitmaps, and the snapshot keeps the primitive key column
+     * of the mode, so that sorts do not need to touch the items.
+     * @param selection Conditions on the indexed fields
+     * @param mode The order of the results of the snapshot
+     */
+    @NotNull
+    public TelemetrySnapshot snapshot(@NotNull SelectionMask selection, @NotNull FilterTelemetryMode mode) {
+        long[] keyColumn = switch (mode) {
+            case Duration -> durations;
+            case Timestamp -> timestamps;
+            default -> null;
+        };
+        long[] snapshotPositions = new long[size];
+        TelemetryItem[] snapshotItems = new TelemetryItem[size];
+        long[] snapshotKeys = keyColumn != null ? new long[size] : null;
+        int count = 0;
+        for (long entry = first; entry < end; entry++) {
+            int slot = slot(entry);
+            if (items[slot] != null) {
+                snapshotPositions[count] = positions[slot];
+                snapshotItems[count] = items[slot];
+                if (snapshotKeys != null) {
+                    snapshotKeys[count] = keyColumn[slot];
+                }
+                count++;
+            }
+        }
+        return new TelemetrySnapshot(
+                snapshotPositions, snapshotItems, snapshotKeys, createBitmap(selection), head, tail);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The estimated heap size of all items (bytes)
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * The number of items of a type.
+     */
+    public int getCount(@NotNull TelemetryType type) {
+        return typeCounts[type.ordinal()];
+    }
+
+    /**
+     * Remove all items. Positions are not reused, so that indexes over positions can detect the change.
+     */
+    public void clear() {
+        Arrays.fill(items, null);
+        first = end;
+        head = tail;
+        size = 0;
+        estimatedBytes = 0;
+        Arrays.fill(typeCounts, 0);
+        for (PositionQueue queue : typePositions) {
+            queue.clear();
+        }
+        for (PositionBitmap bitmap : typeBitmaps) {
+            bitmap.clear();
+        }
+        for (PositionBitmap bitmap : levelBitmaps) {
+            bitmap.clear();
+        }
+        errorBitmap.clear();
+    }
+
+    /**
+     * Position of the oldest item
+     */
+    public long getHead() {
+        return head;
+    }
+
+    /**
+     * Position of the next item
+     */
+    public long getTail() {
+        return tail;
+    }
+
+    /**
+     * The item at a position, or null if it was evicted.
+     */
+    @Nullable
+    public TelemetryItem get(long position) {
+        long entry = entryOf(position);
+        return entry >= 0 ? items[slot(entry)] : null;
+    }
+
+    /**
+     * The entry of a position, or -1 if the position is not in the store.
+     */
+    private long entryOf(long position) {
+        if (position < head || position >= tail) {
+            return -1;
+        }
+        // Positions increase by at least one per entry from the head (at the first entry) to the tail
+        long low = Math.max(first, end - (tail - position));
+        long high = Math.min(end - 1, first + (position - head));
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long middlePosition = positions[slot(middle)];
+            if (middlePosition < position) {
+                low = middle + 1;
+            } else if (middlePosition > position) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private void evict(long entry, @NotNull EvictionListener evicted) {
+        int slot = slot(entry);
+        TelemetryItem item = items[slot];
+        if (item == null) {
+            return;
+        }
+        long position = positions[slot];
+        items[slot] = null;
+        size--;
+        estimatedBytes -= sizes[slot];
+
+        TelemetryType type = item.getType();
+        if (type != null) {
+            // Evicted items are always the oldest of their type
+            typeCounts[type.ordinal()]--;
+            typePositions[type.ordinal()].poll();
+        }
+        setBits(position, item, false);
+        evicted.evicted(position, item);
+
+        // Skip the entries left empty by type quotas
+        long oldHead = head;
+        while (first < end && items[slot(first)] == null) {
+            first++;
+        }
+        head = first < end ? positions[slot(first)] : tail;
+        if (head != oldHead) {
+            for (PositionBitmap bitmap : typeBitmaps) {
+                bitmap.trimBefore(head);
+            }
+            for (PositionBitmap bitmap : levelBitmaps) {
+                bitmap.trimBefore(head);
+            }
+            errorBitmap.trimBefore(head);
+        }
+    }
+
+    /**
+     * Set or clear the bits of an item in the bitmaps
+     */
+    private void setBits(long position, @NotNull TelemetryItem item, boolean value) {
+        TelemetryType type = item.getType();
+        LogLevel level = item.getLogLevel();
+        PositionBitmap typeBitmap = typeBitmaps[type != null ? type.ordinal() : TelemetryType.values().length];
+        if (value) {
+            typeBitmap.set(position);
+            if (level != null) {
+                levelBitmaps[level.ordinal()].set(position);
+            }
+            if (item.isError()) {
+                errorBitmap.set(position);
+            }
+        } else {
+            typeBitmap.clear(position);
+            if (level != null) {
+                levelBitmaps[level.ordinal()].clear(position);
+            }
+            errorBitmap.clear(position);
+        }
+    }
+
+    /**
+     * The positions of the items matching a selection
+     */
+    @NotNull
+    private PositionBitmap createBitmap(@NotNull SelectionMask selection) {
+        PositionBitmap bitmap = new PositionBitmap();
+        for (int i = 0; i < typeBitmaps.length; i++) {
+            if (selection.isTypeIncluded(i)) {
+                bitmap.or(typeBitmaps[i]);
+            }
+        }
+        boolean[] levels = selection.getLevels();
+        if (levels != null) {
+            PositionBitmap levelBitmap = new PositionBitmap();
+            for (int i = 0; i < levels.length; i++) {
+                if (levels[i]) {
+                    levelBitmap.or(levelBitmaps[i]);
+                }
+            }
+            bitmap.and(levelBitmap, false);
+        }
+        if (selection.getError() != null) {
+            bitmap.and(errorBitmap, !selection.getError());
+        }
+        return bitmap;
+    }
+
+    /**
+     * Move the entries of the items still in the store next to each other, in order.
+     */
+    private void compact() {
+        long target = first;
+        for (long entry = first; entry < end; entry++) {
+            int from = slot(entry);
+            if (items[from] == null) {
+                continue;
+            }
+            if (target != entry) {
+                int to = slot(target);
+                items[to] = items[from];
+                positions[to] = positions[from];
+                receivedTimes[to] = receivedTimes[from];
+                sizes[to] = sizes[from];
+                timestamps[to] = timestamps[from];
+                durations[to] = durations[from];
+                items[from] = null;
+            }
+            target++;
+        }
+        end = target;
+    }
+
+    private void grow() {
+        int capacity = items.length * 2;
+        TelemetryItem[] newItems = new TelemetryItem[capacity];
+        long[] newPositions = new long[capacity];
+        long[] newReceivedTimes = new long[capacity];
+        int[] newSizes = new int[capacity];
+        long[] newTimestamps = new long[capacity];
+        long[] newDurations = new long[capacity];
+        int newMask = capacity - 1;
+        for (long entry = first; entry < end; entry++) {
+            int oldSlot = slot(entry);
+            int newSlot = (int) (entry & newMask);
+            newItems[newSlot] = items[oldSlot];
+            newPositions[newSlot] = positions[oldSlot];
+            newReceivedTimes[newSlot] = receivedTimes[oldSlot];
+            newSizes[newSlot] = sizes[oldSlot];
+            newTimestamps[newSlot] = timestamps[oldSlot];
+            newDurations[newSlot] = durations[oldSlot];
+        }
+        items = newItems;
+        positions = newPositions;
+        receivedTimes = newReceivedTimes;
+        sizes = newSizes;
+        timestamps = newTimestamps;
+        durations = newDurations;
+        mask = newMask;
+    }
+
+    private int slot(long entry) {
+        return (int) (entry & mask);
+    }
+
+    /**
+     * Estimate the heap size of an item and of its entries in the session indexes: the JSON (2 bytes per char) and
+     * about as much again for the parsed model, unless the JSON is spilled (the parsed model is then softly
+     * referenced); the trigram postings of the JSON; and the values a metric adds to its series.
+     */
+    private static int estimateSize(@NotNull TelemetryItem item) {
+        long size = ITEM_OVERHEAD + (long) TRIGRAM_BYTES_PER_CHAR * item.getJsonLength()
+                + (long) METRIC_VALUE_BYTES * item.getMetricPointCount();
+        if (!item.isSpilled()) {
+            size += 4L * item.getJsonLength();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /**
+     * FIFO queue of positions
+     */
+    private static final class PositionQueue {
+        @NotNull
+        private long[] positions = new long[16];
+        private int first;
+        private int count;
+
+        void add(long position) {
+            if (count == positions.length) {
+                long[] newPositions = new long[positions.length * 2];
+                for (int i = 0; i < count; i++) {
+                    newPositions[i] = positions[(first + i) % positions.length];
+                }
+                positions = newPositions;
+                first = 0;
+            }
+            positions[(first + count) % positions.length] = position;
+            count++;
+        }
+
+        long peek() {
+            return positions[first];
+        }
+
+        void poll() {
+            first = (first + 1) % positions.length;
+            count--;
+        }
+
+        void clear() {
+            first = 0;
+            count = 0;
+        }
+    }
+}
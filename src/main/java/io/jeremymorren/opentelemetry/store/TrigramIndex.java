@@ -0,0 +1,218 @@
+package io.jeremymorren.opentelemetry.store;
+
+import com.intellij.openapi.progress.ProgressManager;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index of the trigrams (3 consecutive characters) of the JSON of the items of a {@link TelemetryStore}.
+ * <p>
+ * Trigrams are case-folded (as by {@link String#regionMatches(boolean, int, String, int, int)}), so the index serves
+ * both case-sensitive and case-insensitive searches. The candidates it returns must be verified against the text.
+ * <p>
+ * Each trigram maps to the positions of the items that contain it, in ascending order, delta-encoded as varints.
+ * The index is caught up with the snapshot of the store of each query, and rebuilt once most indexed items have been
+ * evicted (evicted positions are skipped when the snapshot is read).
+ * <p>
+ * Not thread safe: it must be confined to the thread that runs the queries.
+ */
+public final class TrigramIndex {
+    /**
+     * A posting list is not intersected when it is much larger than the current candidates:
+     * verifying the candidates is then cheaper than decoding the list.
+     */
+    private static final int MAX_INTERSECT_RATIO = 256;
+
+    @NotNull
+    private final Long2ObjectOpenHashMap<PostingList> postings = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Position of the first indexed item
+     */
+    private long indexedFrom;
+
+    /**
+     * Position of the next item to index
+     */
+    private long indexedTo;
+
+    /**
+     * Find the positions of the items that may contain the pattern.
+     * @return The candidate positions in ascending order, or null if the pattern is too short to use the index
+     */
+    @Nullable
+    public long[] findCandidates(@NotNull TelemetrySnapshot snapshot, @NotNull String pattern) {
+        if (pattern.length() < 3) {
+            return null;
+        }
+        update(snapshot);
+
+        long[] keys = trigrams(pattern);
+        PostingList[] lists = new PostingList[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            lists[i] = postings.get(keys[i]);
+            if (lists[i] == null) {
+                return new long[0];
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.count, b.count));
+
+        long[] candidates = lists[0].decode();
+        int count = candidates.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            if (lists[i].count / MAX_INTERSECT_RATIO > count) {
+                break;
+            }
+            count = lists[i].intersect(candidates, count);
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Index the items added to the store since the last update, up to the snapshot.
+     * If cancelled (see {@link ProgressManager#checkCanceled()}), the next update continues where this one stopped.
+     */
+    private void update(@NotNull TelemetrySnapshot snapshot) {
+        long head = snapshot.getHead();
+        // After the store was cleared, or once more evicted items than live items are indexed, start again
+        if (head > indexedTo || head - indexedFrom > indexedTo - head) {
+            postings.clear();
+            indexedFrom = head;
+            indexedTo = head;
+        }
+        long tail = snapshot.getTail();
+        while (indexedTo < tail) {
+            ProgressManager.checkCanceled();
+            TelemetryItem item = snapshot.get(indexedTo);
+            if (item != null) {
+                add(indexedTo, item.getJson());
+            }
+            indexedTo++;
+        }
+    }
+
+    private void add(long position, @NotNull String text) {
+        if (text.length() < 3) {
+            return;
+        }
+        char c0 = fold(text.charAt(0));
+        char c1 = fold(text.charAt(1));
+        for (int i = 2; i < text.length(); i++) {
+            char c2 = fold(text.charAt(i));
+            long key = key(c0, c1, c2);
+            PostingList list = postings.get(key);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(key, list);
+            }
+            list.add(position);
+            c0 = c1;
+            c1 = c2;
+        }
+    }
+
+    /**
+     * The distinct trigrams of a pattern
+     */
+    @NotNull
+    private static long[] trigrams(@NotNull String pattern) {
+        long[] keys = new long[pattern.length() - 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key(fold(pattern.charAt(i)), fold(pattern.charAt(i + 1)), fold(pattern.charAt(i + 2)));
+        }
+        return Arrays.stream(keys).distinct().toArray();
+    }
+
+    private static long key(char c0, char c1, char c2) {
+        return ((long) c0 << 32) | ((long) c1 << 16) | c2;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Ascending positions, delta-encoded as varints
+     */
+    private static final class PostingList {
+        @NotNull
+        private byte[] data = new byte[8];
+        private int length;
+        private int count;
+        private long last = -1;
+
+        void add(long position) {
+            if (position == last) {
+                // The trigram occurs several times in the item
+                return;
+            }
+            long delta = position - last;
+            last = position;
+            count++;
+            if (length + 10 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while (delta >= 0x80) {
+                data[length++] = (byte) (delta | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+        }
+
+        @NotNull
+        long[] decode() {
+            long[] positions = new long[count];
+            long position = -1;
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                position += delta;
+                positions[i] = position;
+            }
+            return positions;
+        }
+
+        /**
+         * Keep the candidates that are in this list.
+         * @param candidates Ascending positions, updated in place
+         * @return The number of candidates kept
+         */
+        int intersect(@NotNull long[] candidates, int candidateCount) {
+            int kept = 0;
+            int next = 0;
+            long position = -1;
+            int offset = 0;
+            for (int i = 0; i < count && next < candidateCount; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                position += delta;
+
+                while (next < candidateCount && candidates[next] < position) {
+                    next++;
+                }
+                if (next < candidateCount && candidates[next] == position) {
+                    candidates[kept++] = position;
+                    next++;
+                }
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.jeremymorren.opentelemetry.ui;
+
+import com.intellij.ui.AnimatedIcon;
+import com.intellij.ui.components.fields.ExtendableTextComponent;
+
+import javax.swing.*;
+
+/**
+ * Shows a spinner in the filter field while a filter query runs.
+ */
+public class FilterProgressExtension implements ExtendableTextComponent.Extension {
+    private final Icon icon = new AnimatedIcon.Default();
+
+    @Override
+    public Icon getIcon(boolean hovered) {
+        return icon;
+    }
+
+    @Override
+    public String getTooltip() {
+        return "Filtering...";
+    }
+}
@@ -34,21 +34,19 @@ import com.jetbrains.rd.util.lifetime.Lifetime;
 import io.jeremymorren.opentelemetry.*;
 import io.jeremymorren.opentelemetry.models.*;
 import io.jeremymorren.opentelemetry.ui.components.*;
-import io.jeremymorren.opentelemetry.ui.renderers.InstantRenderer;
 import io.jeremymorren.opentelemetry.ui.renderers.TelemetryRenderer;
 import io.jeremymorren.opentelemetry.ui.renderers.TelemetryTypeRenderer;
+import io.jeremymorren.opentelemetry.ui.renderers.TimestampRenderer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ItemEvent;
+import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.awt.event.KeyListener;
 import java.text.DecimalFormat;
-import java.time.Instant;
 import java.util.*;
-import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 public class OpenTelemetryToolWindow {
@@ -61,6 +59,8 @@ public class OpenTelemetryToolWindow {
     @NotNull
     private ExtendableTextField filter;
     @NotNull
+    private final FilterProgressExtension filterProgressExtension = new FilterProgressExtension();
+    @NotNull
     private JScrollPane logsScrollPane;
     @NotNull
     private ActionToolbarImpl toolbar;
@@ -119,11 +119,17 @@ public class OpenTelemetryToolWindow {
     private final TelemetryTableModel telemetryTableModel;
 
     @NotNull
-    private final ArrayList<JLabel> telemetryTypesCounter = new ArrayList<>();
+    private final PrettyJsonCache prettyJsonCache = new PrettyJsonCache();
+
     @NotNull
-    private final Map<TelemetryType, Integer> telemetryCountPerType = new HashMap<>();
+    private final ArrayList<JLabel> telemetryTypesCounter = new ArrayList<>();
 
     private boolean autoScrollToTheEnd;
+
+    /**
+     * Whether a scroll to the end is scheduled, so that a burst of telemetry scrolls once
+     */
+    private boolean autoScrollScheduled;
     private final TextConsoleBuilder builder;
 
     public OpenTelemetryToolWindow(
@@ -150,13 +156,14 @@ public class OpenTelemetryToolWindow {
         formattedInfoScrollPane.getVerticalScrollBar().setUnitIncrement(12);
         formattedInfoScrollPane.getHorizontalScrollBar().setUnitIncrement(12);
 
-        logsTable.setDefaultRenderer(Telemetry.class, new TelemetryRenderer());
-        logsTable.setDefaultRenderer(Instant.class, new InstantRenderer());
+        // The timestamp and detail columns show text precomputed by the items, so painting does no formatting
+        logsTable.setDefaultRenderer(TelemetryItem.class, new TelemetryRenderer());
         logsTable.setDefaultRenderer(TelemetryType.class, new TelemetryTypeRenderer());
         logsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
-        telemetryTableModel = new TelemetryTableModel();
+        telemetryTableModel = new TelemetryTableModel(opentelemetrySession);
         logsTable.setModel(telemetryTableModel);
+        logsTable.getColumnModel().getColumn(0).setCellRenderer(new TimestampRenderer());
         logsTable.getColumnModel().getColumn(0).setPreferredWidth(90);
         logsTable.getColumnModel().getColumn(0).setMaxWidth(130);
         logsTable.getColumnModel().getColumn(1).setPreferredWidth(75);
@@ -167,16 +174,8 @@ public class OpenTelemetryToolWindow {
 
         filter.setExtensions(new ClearTextFieldExtension(filter));
 
-        filter.addKeyListener(new KeyListener() {
-            @Override
-            public void keyTyped(KeyEvent e) {
-            }
-
-            @Override
-            public void keyPressed(KeyEvent e) {
-                OpenTelemetryToolWindow.this.openTelemetrySession.updateFilter(filter.getText());
-            }
-
+        // The text is only updated once the key is released (the session ignores keys that do not change it)
+        filter.addKeyListener(new KeyAdapter() {
             @Override
             public void keyReleased(KeyEvent e) {
                 OpenTelemetryToolWindow.this.openTelemetrySession.updateFilter(filter.getText());
@@ -196,7 +195,7 @@ public class OpenTelemetryToolWindow {
         {
             return;
         }
-        updateJsonPreview(telemetry.getJson());
+        updateJsonPreview(prettyJsonCache.get(telemetry));
         updateSqlPreview(telemetry.getTelemetry().getSql());
         updateExceptionView(telemetry.getTelemetry().getLog());
         updateFormattedDisplay(telemetry.getTelemetry());
@@ -207,31 +206,47 @@ public class OpenTelemetryToolWindow {
         return mainPanel;
     }
 
-    public void setTelemetries(
-            @NotNull List<TelemetryItem> telemetries,
-            @NotNull List<TelemetryItem> visibleTelemetries
-    ) {
-        telemetryTableModel.setRows(visibleTelemetries);
+    /**
+     * Refresh the table after the filtered telemetry of the session was replaced
+     */
+    public void updateTelemetries() {
+        telemetryTableModel.rowsChanged();
+    }
+
+    /**
+     * Show or hide the progress indicator of the filter field
+     */
+    public void setFilterInProgress(boolean inProgress) {
+        if (inProgress)
+            filter.addExtension(filterProgressExtension);
+        else
+            filter.removeExtension(filterProgressExtension);
+    }
+
+    /**
+     * Remove rows of evicted telemetry (already removed from the session)
+     * @param rows The row indexes, in the order they were removed
+     */
+    public void removeTelemetries(@NotNull int[] rows) {
+        telemetryTableModel.rowsRemoved(rows);
     }
 
-    public void addTelemetry(
-            int index,
-            @NotNull TelemetryItem telemetry,
-            boolean visible,
-            boolean shouldScroll
-    ) {
-        if (visible) {
-            if (index != -1)
-                telemetryTableModel.addRow(index, telemetry);
-            else
-                telemetryTableModel.addRow(telemetry);
+    /**
+     * Add the row of a telemetry item (already added to the session).
+     * The table is updated with the other rows added in the same EDT event.
+     */
+    public void addTelemetry(int index, boolean shouldScroll) {
+        telemetryTableModel.rowInserted(index);
+        if (autoScrollToTheEnd && shouldScroll && !autoScrollScheduled) {
+            autoScrollScheduled = true;
+            // Runs after the table model has notified the new rows
             SwingUtilities.invokeLater(() -> {
-                if (autoScrollToTheEnd && shouldScroll) {
+                autoScrollScheduled = false;
+                if (autoScrollToTheEnd) {
                     performAutoScrollToTheEnd();
                 }
             });
         }
-        updateTelemetryTypeCounter(telemetry);
     }
 
     private void performAutoScrollToTheEnd() {
@@ -328,23 +343,15 @@ public class OpenTelemetryToolWindow {
         }
     }
 
-    private void updateTelemetryTypeCounter(@Nullable TelemetryItem telemetry)
+    /**
+     * Update the counters with the number of telemetry items of each type kept in the session
+     */
+    public void updateTelemetryTypeCounters()
     {
-        if (telemetry == null) return;
-        var type = telemetry.getTelemetry().getType();
-        if (type == null) return;
-        var count = telemetryCountPerType.getOrDefault(type, 0);
-        count++;
-        telemetryCountPerType.put(type, count);
-
-
         for (JLabel counter: telemetryTypesCounter)
         {
             TelemetryType telemetryType = (TelemetryType) counter.getClientProperty("TelemetryType");
-            if (telemetryType == type) {
-                counter.setText(format(count));
-                break;
-            }
+            counter.setText(format(openTelemetrySession.getTelemetryCount(telemetryType)));
         }
     }
 
@@ -505,6 +512,11 @@ public class OpenTelemetryToolWindow {
                         var sum = format(point.getHistogramSum());
                         formattedInfo.add(new JLabel("Histogram Sum: " + sum), createConstraint(row++, indent));
                     }
+                    var series = openTelemetrySession.getMetricSeries(metric.getMeterName(), metric.getName(), point.getTags());
+                    if (series != null && series.getCount() > 1) {
+                        var latest = format(series.getLatestValue());
+                        formattedInfo.add(new JLabel("Latest: " + latest + " (" + series.getCount() + " values)"), createConstraint(row++, indent));
+                    }
                     if (point.getTags() != null) {
                         for (Map.Entry<String, String> entry : point.getTags().getPrimitiveValues().entrySet()) {
                             var label = createFilterLabel(entry.getKey(), entry.getValue());
@@ -0,0 +1,39 @@
+package io.jeremymorren.opentelemetry.ui
+
+import io.jeremymorren.opentelemetry.models.TelemetryItem
+import kotlinx.serialization.SerializationException
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonElement
+
+/**
+ * Formats telemetry JSON for the JSON preview on demand.
+ * The most recently formatted values are kept, so switching between a few rows does not format them again.
+ * Entries are keyed by item identity: lookups do not hash the JSON, and the compact JSON is not kept
+ * (spilled items read it back from the payload store only when formatted).
+ * Not thread safe: only used from the EDT.
+ */
+class PrettyJsonCache(private val capacity: Int = 32) {
+    private val cache = object : LinkedHashMap<TelemetryItem, String>(capacity, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<TelemetryItem, String>?): Boolean = size > capacity
+    }
+
+    /**
+     * Get the pretty-printed JSON of an item.
+     */
+    fun get(item: TelemetryItem): String = cache.getOrPut(item) { format(item.json) }
+
+    companion object {
+        private val prettyJson = Json {
+            prettyPrint = true
+            prettyPrintIndent = "  "
+        }
+
+        private fun format(json: String): String {
+            return try {
+                prettyJson.encodeToString(JsonElement.serializer(), Json.parseToJsonElement(json))
+            } catch (e: SerializationException) {
+                json // Show the JSON as is
+            }
+        }
+    }
+}
@@ -1,64 +1,184 @@
 package io.jeremymorren.opentelemetry.ui
 
-import io.jeremymorren.opentelemetry.models.Telemetry
+import io.jeremymorren.opentelemetry.OpenTelemetrySession
 import io.jeremymorren.opentelemetry.models.TelemetryItem
 import io.jeremymorren.opentelemetry.models.TelemetryType
 import io.jeremymorren.opentelemetry.models.TimeSpan
-import java.time.Instant
-import java.util.*
+import javax.swing.SwingUtilities
 import javax.swing.table.AbstractTableModel
-import kotlin.math.max
 
-class TelemetryTableModel : AbstractTableModel() {
+/**
+ * Table of the filtered telemetry of a session, read through its sorted view.
+ *
+ * Changes of the view are queued, coalesced into contiguous ranges, and notified once per EDT event,
+ * so that a burst of telemetry causes a few table events instead of one per item.
+ * Until they are notified, the table reads the rows as of the last notified change: the row count is the notified one,
+ * and each notified row is mapped through the pending changes to its row in the view.
+ */
+class TelemetryTableModel(private val session: OpenTelemetrySession) : AbstractTableModel() {
+    private companion object {
+        /**
+         * Beyond this number of pending ranges, the whole table is refreshed instead
+         */
+        const val MAX_PENDING_RANGES = 32
+    }
+
     private val columnNames = arrayOf(
         "timestamp", "duration", "type", "detail"
     )
     private val columnClass = arrayOf<Class<*>>(
-        Instant::class.java, TimeSpan::class.java, TelemetryType::class.java, Telemetry::class.java
+        String::class.java, TimeSpan::class.java, TelemetryType::class.java, TelemetryItem::class.java
     )
 
-    private val telemetries: MutableList<TelemetryItem> = ArrayList()
+    /**
+     * The row count as of the last notified change
+     */
+    private var notifiedRowCount = 0
+
+    /**
+     * Pending changes, in order: inserted or deleted ranges of rows
+     */
+    private val pendingRanges = ArrayList<RowRange>()
+    private var pendingDataChanged = false
+    private var flushScheduled = false
 
     override fun getColumnName(column: Int): String = columnNames[column]
 
     override fun getColumnClass(columnIndex: Int): Class<*> = columnClass[columnIndex]
 
-    override fun getRowCount(): Int = telemetries.size
+    override fun getRowCount(): Int = notifiedRowCount
 
     override fun getColumnCount(): Int = columnNames.size
 
     override fun getValueAt(rowIndex: Int, columnIndex: Int): Any? {
-        val telemetry = telemetries[rowIndex]
+        val telemetry = getRow(rowIndex) ?: return null
         return when (columnIndex) {
-            0 -> telemetry.timestamp
+            0 -> telemetry.timestampText
             1 -> telemetry.duration
-            2 -> telemetry.telemetry.type
-            3 -> telemetry.telemetry
+            2 -> telemetry.type
+            3 -> telemetry
             else -> null
         }
     }
 
-    fun addRow(telemetry: TelemetryItem) {
-        telemetries.add(telemetry)
-        this.fireTableRowsInserted(telemetries.size - 1, telemetries.size - 1)
+    /**
+     * Queue the notification of a row inserted in the view.
+     */
+    fun rowInserted(row: Int) {
+        val last = pendingRanges.lastOrNull()
+        // A row inserted in (or next to) a range of inserted rows extends it
+        if (last != null && last.inserted && row >= last.start && row <= last.end + 1) {
+            last.end++
+        } else {
+            addPendingRange(RowRange(true, row, row))
+        }
     }
 
-    fun addRow(i: Int, telemetry: TelemetryItem) {
-        telemetries.add(i, telemetry)
-        this.fireTableRowsInserted(telemetries.size - 1, telemetries.size - 1)
+    /**
+     * Queue the notification of rows removed from the view.
+     * @param rows The row indexes, in the order they were removed
+     * (each index is relative to the rows left by the previous removals)
+     */
+    fun rowsRemoved(rows: IntArray) {
+        for (row in rows) {
+            val last = pendingRanges.lastOrNull()
+            // Removing the row at the start of a range of removed rows (or just before it) extends it
+            if (last != null && !last.inserted && row == last.start) {
+                last.end++
+            } else if (last != null && !last.inserted && row == last.start - 1) {
+                last.start--
+            } else {
+                addPendingRange(RowRange(false, row, row))
+            }
+        }
     }
 
-    fun setRows(telemetries: List<TelemetryItem>) {
-        val previousSize = this.telemetries.size
-        this.telemetries.clear()
-        this.fireTableRowsDeleted(0, max(0.0, (previousSize - 1).toDouble()).toInt())
-        this.telemetries.addAll(telemetries)
-        this.fireTableRowsInserted(0, max(0.0, (this.telemetries.size - 1).toDouble()).toInt())
+    /**
+     * Refresh the whole table, discarding the pending changes.
+     */
+    fun rowsChanged() {
+        pendingRanges.clear()
+        pendingDataChanged = false
+        notifiedRowCount = session.filteredTelemetryCount
+        this.fireTableDataChanged()
     }
 
+    /**
+     * The telemetry of a row of the table, as of the last notified change.
+     * @return The telemetry, or null if the row was removed from the view since
+     */
     fun getRow(selectedRow: Int): TelemetryItem? {
-        if (selectedRow < 0) return null
-        if (selectedRow >= this.rowCount) return null
-        return telemetries[selectedRow]
+        if (selectedRow < 0 || selectedRow >= notifiedRowCount) return null
+        val row = viewRow(selectedRow)
+        if (row < 0 || row >= session.filteredTelemetryCount) return null
+        return session.getFilteredTelemetry(row)
+    }
+
+    /**
+     * Map a notified row to its row in the view, applying the pending changes in order.
+     * @return The row in the view, or -1 if it was removed (or the changes are only known as a full refresh)
+     */
+    private fun viewRow(notifiedRow: Int): Int {
+        if (pendingDataChanged) return -1
+        var row = notifiedRow
+        for (range in pendingRanges) {
+            val size = range.end - range.start + 1
+            if (range.inserted) {
+                if (row >= range.start) row += size
+            } else if (row > range.end) {
+                row -= size
+            } else if (row >= range.start) {
+                return -1
+            }
+        }
+        return row
+    }
+
+    private fun addPendingRange(range: RowRange) {
+        if (!pendingDataChanged) {
+            if (pendingRanges.size < MAX_PENDING_RANGES) {
+                pendingRanges.add(range)
+            } else {
+                pendingRanges.clear()
+                pendingDataChanged = true
+            }
+        }
+        if (!flushScheduled) {
+            flushScheduled = true
+            SwingUtilities.invokeLater { flush() }
+        }
     }
+
+    /**
+     * Notify the pending changes
+     */
+    private fun flush() {
+        flushScheduled = false
+        if (pendingDataChanged) {
+            rowsChanged()
+            return
+        }
+        // A range larger than the rows left is cheaper to notify as a full refresh
+        val changedRows = pendingRanges.sumOf { it.end - it.start + 1 }
+        if (changedRows > session.filteredTelemetryCount) {
+            rowsChanged()
+            return
+        }
+        // Each range is dequeued before it is notified, so that the table reads the rows as of that range
+        while (pendingRanges.isNotEmpty()) {
+            val range = pendingRanges.removeAt(0)
+            if (range.inserted) {
+                notifiedRowCount += range.end - range.start + 1
+                this.fireTableRowsInserted(range.start, range.end)
+            } else {
+                notifiedRowCount -= range.end - range.start + 1
+                this.fireTableRowsDeleted(range.start, range.end)
+            }
+        }
+    }
+
+    /**
+     * Rows inserted or deleted, from start to end (inclusive)
+     */
+    private class RowRange(val inserted: Boolean, var start: Int, var end: Int)
 }
@@ -1,12 +1,20 @@
 package io.jeremymorren.opentelemetry.ui.renderers
 
 import com.intellij.ui.JBColor
-import io.jeremymorren.opentelemetry.models.LogLevel
-import io.jeremymorren.opentelemetry.models.Telemetry
+import io.jeremymorren.opentelemetry.models.DetailStyle
+import io.jeremymorren.opentelemetry.models.TelemetryItem
 import java.awt.Component
 import javax.swing.JTable
 
+/**
+ * Renders the detail precomputed by the telemetry item, coloured by its style.
+ */
 class TelemetryRenderer : TelemetryRendererBase() {
+    private val defaultColor = JBColor.namedColor("OpenTelemetry.SeverityLevel.Default", JBColor.foreground())
+    private val warningColor = JBColor.namedColor("OpenTelemetry.SeverityLevel.Warning", JBColor.orange)
+    private val errorColor = JBColor.namedColor("OpenTelemetry.SeverityLevel.Error", JBColor.red)
+    private val criticalColor = JBColor.namedColor("OpenTelemetry.SeverityLevel.Critical", JBColor(0xA21319, 0x5B0006))
+
     override fun getTableCellRendererComponent(
         table: JTable,
         value: Any?,
@@ -17,46 +25,21 @@ class TelemetryRenderer : TelemetryRendererBase() {
     ): Component {
         super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column)
 
-        super.setForeground(JBColor.foreground())
-
-        if (value !is Telemetry) {
+        if (value !is TelemetryItem) {
+            super.setText(null)
+            super.setForeground(JBColor.foreground())
             return this
         }
-        if (value.activity != null) {
-            super.setText(value.activity.detail)
-            val color =
-                if (value.activity.isError) {
-                    JBColor.namedColor("OpenTelemetry.SeverityLevel.Error", JBColor.red)
-                }
-                else {
-                    JBColor.namedColor("OpenTelemetry.SeverityLevel.Default", JBColor.foreground())
-                }
-            super.setForeground(color)
-        }
-        if (value.metric != null) {
-            super.setText(value.metric.detail)
-        }
-        if (value.log != null) {
-            super.setText(value.log.displayMessage)
-            val foreGround = JBColor.namedColor("OpenTelemetry.SeverityLevel.Default", JBColor.foreground())
-            when (value.log.logLevel) {
-                LogLevel.Warning -> {
-                    val color = JBColor.namedColor("OpenTelemetry.SeverityLevel.Warning", JBColor.orange)
-                    super.setForeground(color)
-                }
-                LogLevel.Error -> {
-                    val color = JBColor.namedColor("OpenTelemetry.SeverityLevel.Error", JBColor.red)
-                    super.setForeground(color)
-                }
-                LogLevel.Critical -> {
-                    val color = JBColor.namedColor("OpenTelemetry.SeverityLevel.Critical", JBColor(0xA21319, 0x5B0006))
-                    super.setForeground(foreGround)
-                    if (!isSelected) {
-                        super.setBackground(color)
-                    }
-                }
-                else -> {
-                    super.setForeground(foreGround)
+        super.setText(value.detail)
+        when (value.detailStyle) {
+            DetailStyle.Plain -> super.setForeground(JBColor.foreground())
+            DetailStyle.Default -> super.setForeground(defaultColor)
+            DetailStyle.Warning -> super.setForeground(warningColor)
+            DetailStyle.Error -> super.setForeground(errorColor)
+            DetailStyle.Critical -> {
+                super.setForeground(defaultColor)
+                if (!isSelected) {
+                    super.setBackground(criticalColor)
                 }
             }
         }
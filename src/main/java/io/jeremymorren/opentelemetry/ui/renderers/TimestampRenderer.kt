@@ -1,14 +1,12 @@
 package io.jeremymorren.opentelemetry.ui.renderers
 
 import java.awt.Component
-import java.text.SimpleDateFormat
-import java.time.Instant
-import java.util.*
 import javax.swing.JTable
 
-class InstantRenderer : TelemetryRendererBase() {
-    private val simpleDateFormat = SimpleDateFormat("HH:mm:ss.S")
-
+/**
+ * Renders the timestamp column: the timestamp text precomputed by the telemetry item.
+ */
+class TimestampRenderer : TelemetryRendererBase() {
     override fun getTableCellRendererComponent(
         table: JTable,
         value: Any?,
@@ -19,10 +17,7 @@ class InstantRenderer : TelemetryRendererBase() {
     ): Component {
         super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column)
 
-        if (value is Instant) {
-            val date = Date.from(value)
-            super.setText(simpleDateFormat.format(date))
-        }
+        super.setText(value as? String)
 
         return this
     }
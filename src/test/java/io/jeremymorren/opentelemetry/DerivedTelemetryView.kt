@@ -0,0 +1,54 @@
+package io.jeremymorren.opentelemetry
+
+import io.jeremymorren.opentelemetry.models.DetailStyle
+import io.jeremymorren.opentelemetry.models.LogLevel
+import io.jeremymorren.opentelemetry.models.Telemetry
+import io.jeremymorren.opentelemetry.models.TelemetryItem
+import java.text.SimpleDateFormat
+import java.time.Instant
+import java.util.*
+
+/**
+ * The previous sorting and rendering of the telemetry table, with the values derived from the telemetry when they
+ * were used: timestamps were parsed by each comparison and each paint.
+ * Kept to check that the precomputed values give the same table, and to compare their cost.
+ */
+object DerivedTelemetryView {
+    fun sortByTimestamp(items: List<TelemetryItem>): List<TelemetryItem> =
+        items.sortedWith(compareBy { timestampText(it.telemetry)?.let(Instant::parse) })
+
+    /**
+     * The text and style of the timestamp and detail cells, derived from the telemetry as the renderers did
+     */
+    fun render(item: TelemetryItem, dateFormat: SimpleDateFormat): List<Any?> {
+        val telemetry = item.telemetry
+        val log = telemetry.log
+        val activity = telemetry.activity
+        val metric = telemetry.metric
+        val timestamp = timestampText(telemetry)?.let { dateFormat.format(Date.from(Instant.parse(it))) }
+        val style = when {
+            log != null -> when (log.logLevel) {
+                LogLevel.Warning -> DetailStyle.Warning
+                LogLevel.Error -> DetailStyle.Error
+                LogLevel.Critical -> DetailStyle.Critical
+                else -> DetailStyle.Default
+            }
+            activity != null -> if (activity.isError) DetailStyle.Error else DetailStyle.Default
+            else -> DetailStyle.Plain
+        }
+        val detail = when {
+            log != null -> log.displayMessage
+            metric != null -> metric.detail
+            else -> activity?.detail
+        }
+        return listOf(timestamp, item.type, detail, style)
+    }
+
+    /**
+     * The date format of the timestamp cells
+     */
+    fun dateFormat(): SimpleDateFormat = SimpleDateFormat("HH:mm:ss.S")
+
+    private fun timestampText(telemetry: Telemetry): String? =
+        telemetry.activity?.startTime ?: telemetry.log?.timestamp ?: telemetry.metric?.timestamp
+}
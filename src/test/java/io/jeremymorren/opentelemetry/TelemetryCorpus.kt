@@ -0,0 +1,96 @@
+package io.jeremymorren.opentelemetry
+
+import kotlin.random.Random
+
+/**
+ * Telemetry records shaped like the output of the exporter (server requests, HTTP and SQL dependencies,
+ * log messages and metrics), for the benchmark tests.
+ */
+object TelemetryCorpus {
+    /**
+     * Generate records, in the proportions of a typical debug session.
+     */
+    fun records(count: Int, seed: Int = 1): List<String> {
+        val random = Random(seed)
+        return List(count) { i ->
+            when (random.nextInt(10)) {
+                0, 1 -> request(random, i)
+                2, 3, 4 -> dependency(random, i)
+                5, 6, 7, 8 -> log(random, i)
+                else -> metric(random, i)
+            }
+        }
+    }
+
+    private fun request(random: Random, i: Int): String =
+        """{"activity":{"rootId":"${hex(random, 32)}","traceId":"${hex(random, 32)}",""" +
+        """"spanId":"${hex(random, 16)}",""" +
+        """"activityTraceFlags":"Recorded","source":{"name":"Microsoft.AspNetCore"},""" +
+        """"displayName":"GET /api/orders/{id}","kind":"Server","startTime":"${timestamp(random, i)}",""" +
+        """"duration":"${duration(random)}","tags":{"server.address":"localhost","server.port":5001,""" +
+        """"http.request.method":"GET","url.scheme":"https","url.path":"/api/orders/$i",""" +
+        """"network.protocol.version":"2","user_agent.original":"Mozilla/5.0 (Windows NT 10.0; Win64; x64)",""" +
+        """"http.route":"api/orders/{id}","http.response.status_code":${statusCode(random)}},""" +
+        """"operationName":"Microsoft.AspNetCore.Hosting.HttpRequestIn","status":"Unset","events":[]},""" +
+        """"resource":{"service.name":"Orders.Api","service.instance.id":"${hex(random, 8)}",""" +
+        """"telemetry.sdk.name":"opentelemetry","telemetry.sdk.language":"dotnet","telemetry.sdk.version":"1.9.0"}}"""
+
+    private fun dependency(random: Random, i: Int): String =
+        if (random.nextBoolean()) {
+            """{"activity":{"traceId":"${hex(random, 32)}","spanId":"${hex(random, 16)}",""" +
+            """"parentSpanId":"${hex(random, 16)}","source":{"name":"OpenTelemetry.Instrumentation.SqlClient",""" +
+            """"version":"1.9.0.0"},"displayName":"orders","kind":"Client","startTime":"${timestamp(random, i)}",""" +
+            """"duration":"${duration(random)}","tags":{"db.system":"mssql","db.name":"orders",""" +
+            """"peer.service":"sql01","db.statement":"SELECT [o].[Id], [o].[Total]\r\nFROM [Orders] AS [o]\r\n""" +
+            """WHERE [o].[CustomerId] = @__customerId_0","server.address":"sql01"},""" +
+            """"operationName":"OpenTelemetry.Instrumentation.SqlClient.Execute","status":"Unset"}}"""
+        } else {
+            """{"activity":{"traceId":"${hex(random, 32)}","spanId":"${hex(random, 16)}",""" +
+            """"parentSpanId":"${hex(random, 16)}","source":{"name":"System.Net.Http"},"displayName":"GET",""" +
+            """"kind":"Client","startTime":"${timestamp(random, i)}","duration":"${duration(random)}",""" +
+            """"tags":{"http.request.method":"GET","server.address":"inventory","server.port":443,""" +
+            """"url.full":"https://inventory/api/stock/$i","network.protocol.version":"1.1",""" +
+            """"http.response.status_code":200},"operationName":"System.Net.Http.HttpRequestOut","status":"Unset"}}"""
+        }
+
+    private fun log(random: Random, i: Int): String {
+        val level = listOf("Trace", "Debug", "Information", "Information", "Warning", "Error")[random.nextInt(6)]
+        val exception = if (level == "Error") {
+            ""","exception":{"type":"System.InvalidOperationException","message":"Order $i is locked",""" +
+            """"display":"System.InvalidOperationException: Order $i is locked\r\n""" +
+            """   at Orders.Api.OrderService.Update(Int32 id)\r\n   at Orders.Api.Controllers.""" +
+            """OrdersController.Put(Int32 id)"}"""
+        } else {
+            ""
+        }
+        return """{"log":{"body":"Processed order {OrderId} in {Elapsed} ms",""" +
+            """"formattedMessage":"Processed order $i in ${random.nextInt(500)} ms","logLevel":"$level",""" +
+            """"timestamp":"${timestamp(random, i)}","attributes":{"OrderId":$i,"Elapsed":${random.nextDouble()},""" +
+            """"{OriginalFormat}":"Processed order {OrderId} in {Elapsed} ms"},"traceId":"${hex(random, 32)}",""" +
+            """"spanId":"${hex(random, 16)}","categoryName":"Orders.Api.OrderService",""" +
+            """"eventId":{"id":${random.nextInt(100)},"name":"OrderProcessed"}$exception}}"""
+    }
+
+    private fun metric(random: Random, i: Int): String =
+        """{"metric":{"metricType":"Histogram","temporality":"Cumulative","name":"http.server.request.duration",""" +
+        """"description":"Duration of HTTP server requests.","unit":"s","meterName":"Microsoft.AspNetCore.Hosting",""" +
+        """"points":[{"startTime":"${timestamp(random, i)}","endTime":"${timestamp(random, i + 1)}",""" +
+        """"tags":{"http.request.method":"GET","http.route":"api/orders/{id}","http.response.status_code":200},""" +
+        """"histogramCount":${random.nextInt(1000)},"histogramSum":${random.nextDouble() * 10}}]}}"""
+
+    private fun statusCode(random: Random): Int = if (random.nextInt(20) == 0) 500 else 200
+
+    private fun timestamp(random: Random, i: Int): String {
+        val seconds = i / 100
+        return String.format(
+            "2024-05-01T10:%02d:%02d.%07dZ", (seconds / 60) % 60, seconds % 60, random.nextInt(10_000_000))
+    }
+
+    private fun duration(random: Random): String = String.format("00:00:00.%07d", random.nextInt(10_000_000))
+
+    private fun hex(random: Random, length: Int): String {
+        val builder = StringBuilder(length)
+        repeat(length) { builder.append("0123456789abcdef"[random.nextInt(16)]) }
+        return builder.toString()
+    }
+}
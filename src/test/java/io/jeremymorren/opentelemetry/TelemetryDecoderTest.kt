@@ -0,0 +1,171 @@
+package io.jeremymorren.opentelemetry
+
+import io.jeremymorren.opentelemetry.models.Telemetry
+import io.jeremymorren.opentelemetry.models.TelemetryItem
+import kotlinx.serialization.SerializationException
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.decodeFromJsonElement
+import org.testng.Assert.assertEquals
+import org.testng.Assert.assertNotNull
+import org.testng.Assert.assertNull
+import org.testng.Assert.assertSame
+import org.testng.annotations.DataProvider
+import org.testng.annotations.Test
+
+/**
+ * [TelemetryDecoder] must give the same telemetry and compact JSON as the generic decoder
+ * (the JSON tree, decoded to the model and re-encoded), or reject the record.
+ */
+class TelemetryDecoderTest {
+    private val decoder = TelemetryDecoder(TelemetryInterner())
+
+    @DataProvider
+    fun decodedRecords(): Array<Array<Any>> = arrayOf(
+        // Escapes
+        record("""{"log":{"body":"quote \" backslash \\ slash \/ tab \t line\r\n","logLevel":"Information"}}"""),
+        record("""{"log":{"body":"control \u0001\u001f \b\f, unicode \u00e9\u20AC, raw é€"}}"""),
+        record("""{"log":{"attributes":{"path":"C:\\temp\\a.txt","quote":"\"x\""}}}"""),
+        record("""{"log":{"body":"as encoded \" \\ \b\f\n\r\t \u0001\u001f"}}"""),
+        record("""{"log":{"body":"upper case \u001F"}}"""),
+        record("""{"log":{"body":"a","attributes":{"n":1e2,"s":"x\/y","t":"\u0001","u":"\n"}}}"""),
+        // Numbers
+        record("""{"metric":{"points":[{"doubleSum":1.5e3,"doubleGauge":-2E-5,"histogramSum":0.1}]}}"""),
+        record("""{"metric":{"points":[{"longSum":9223372036854775807,"longGauge":-9223372036854775808}]}}"""),
+        record("""{"log":{"attributes":{"unsigned":18446744073709551615,"exponent":1e2,"negative":-0}}}"""),
+        record("""{"log":{"eventId":{"id":-2147483648,"name":"min"}}}"""),
+        record("""{"metric":{"points":[{"doubleSum":-0,"doubleGauge":12,"histogramSum":1E2,"longGauge":-0}]}}"""),
+        record("""{"log":{"attributes":{"big":9223372036854775808,"long":123456789012345678,"zero":0,"minus":-7}}}"""),
+        // Nulls
+        record("""{"activity":null,"metric":null,"log":null,"resource":null}"""),
+        record("""{"activity":{"rootId":null,"source":null,"kind":null,"duration":null,"tags":null,"events":null}}"""),
+        record("""{"log":{"attributes":{"value":null},"exception":{"innerException":null}}}"""),
+        // Unknown keys, at each level
+        record("""{"unknown":{"nested":[1,"two",null,true]},"log":{"body":"b","extra":false}}"""),
+        record("""{"activity":{"source":{"name":"s","extra":1},"events":[{"name":"e","extra":[]}],"extra":{}}}"""),
+        record("""{"metric":{"points":[{"longSum":1,"extra":"x"}],"extra":null}}"""),
+        // Lone surrogates
+        record("""{"log":{"body":"high \ud800 low \udc00 pair \ud83d\ude00"}}"""),
+        record("""{"log":{"attributes":{"surrogate":"\udfff"}}}"""),
+        // Resources
+        record("""{"log":{"body":"a"},"resource":{"service.name":"a","service.version":1e0}}"""),
+        record("""{"log":{"body":"b"},"resource":{"service.name":"a","service.version":1e0}}"""),
+        record("""{"log":{"body":"c"}, "resource":{"service.name":"a","service.version":1e0}}"""),
+        record("""{"log":{"body":"d"},"resource":{"service.name":"a","service.version":1e0},"extra":1}"""),
+        // Whitespace and a complete activity
+        record(""" { "activity" : { "displayName" : "GET" , "kind" : "Server" , "status" : "Error" ,
+            "startTime" : "2024-05-01T10:00:00.0000000Z" , "duration" : "00:00:01.5000000" ,
+            "tags" : { "url.path" : "/orders" , "http.response.status_code" : 500 } } } """),
+    )
+
+    @Test(dataProvider = "decodedRecords")
+    fun decodesAsTheGenericDecoder(json: String) {
+        val item = decoder.decode(json)
+        assertNotNull(item, json)
+        val generic = decodeGeneric(json)
+        assertEquals(encode(item!!.telemetry), encode(generic.telemetry), json)
+        assertEquals(item.json, generic.json, json)
+    }
+
+    @DataProvider
+    fun compactRecords(): Array<Array<Any>> = arrayOf(
+        record("""{"log":{"body":"as encoded \" \\ \b\f\n\r\t \u0001\u001f","attributes":{"n":-12,"d":0.5}}}"""),
+        record("""{"metric":{"points":[{"longSum":0,"doubleSum":1.0E-5,"tags":{"a":[true,false,null]}}]}}"""),
+    )
+
+    /**
+     * A record already in the compact form is kept as is
+     */
+    @Test(dataProvider = "compactRecords")
+    fun keepsTheTextOfCompactRecords(json: String) {
+        val item = decoder.decode(json)
+        assertNotNull(item, json)
+        assertSame(item!!.json, json)
+        assertEquals(item.json, decodeGeneric(json).json)
+    }
+
+    @DataProvider
+    fun rejectedRecords(): Array<Array<Any>> = arrayOf(
+        // Bad enums
+        record("""{"log":{"logLevel":"Verbose"}}"""),
+        record("""{"activity":{"kind":"server"}}"""),
+        record("""{"activity":{"status":1}}"""),
+        // Values of an unexpected type
+        record("""{"log":{"body":1}}"""),
+        record("""{"log":{"eventId":{"id":2147483648}}}"""),
+        record("""{"metric":{"points":[{"longSum":1.5}]}}"""),
+        record("""{"activity":{"duration":"one second"}}"""),
+        // Missing required values
+        record("""{"activity":{"source":{"version":"1.0"}}}"""),
+        record("""{"log":{"eventId":{"name":"no id"}}}"""),
+    )
+
+    @Test(dataProvider = "rejectedRecords")
+    fun rejectsWhatTheGenericDecoderRejects(json: String) {
+        assertNull(decoder.decode(json), json)
+        try {
+            decodeGeneric(json)
+            throw AssertionError("The generic decoder accepted $json")
+        } catch (e: SerializationException) {
+            // Expected: the record is reported as an error
+        } catch (e: IllegalArgumentException) {
+            // Expected: kotlinx reports some invalid values (e.g. a bad duration) this way
+        }
+    }
+
+    @DataProvider
+    fun invalidRecords(): Array<Array<Any>> = arrayOf(
+        record("""{"log":{"body":"unterminated}}"""),
+        record("""{"log":{"body":"bad escape \x"}}"""),
+        record("""{"log":{"body":"short escape \u12"}}"""),
+        record("""{"log":{}} trailing"""),
+        record("""{"log":{"attributes":{"a":+1}}}"""),
+        record("""{"log":{"attributes":{"a":NaN}}}"""),
+    )
+
+    @Test(dataProvider = "invalidRecords")
+    fun rejectsInvalidJson(json: String) {
+        assertNull(decoder.decode(json), json)
+    }
+
+    @DataProvider
+    fun duplicateKeyRecords(): Array<Array<Any>> = arrayOf(
+        record("""{"log":{"body":"first","body":"second"}}"""),
+        record("""{"log":{"attributes":{"a":1,"b":2,"a":3}}}"""),
+        record("""{"log":{},"log":{"body":"b"}}"""),
+    )
+
+    /**
+     * The JSON parser keeps the last value of a duplicate key: the record is left to the generic decoder
+     */
+    @Test(dataProvider = "duplicateKeyRecords")
+    fun rejectsDuplicateKeys(json: String) {
+        assertNull(decoder.decode(json), json)
+        decodeGeneric(json)
+    }
+
+    @Test
+    fun decodesTheCorpusAsTheGenericDecoder() {
+        for (json in TelemetryCorpus.records(2_000, seed = 3)) {
+            val item = decoder.decode(json)
+            assertNotNull(item, json)
+            val generic = decodeGeneric(json)
+            assertEquals(encode(item!!.telemetry), encode(generic.telemetry), json)
+            assertEquals(item.json, generic.json, json)
+            assertSame(item.json, json)
+        }
+    }
+
+    /**
+     * The generic decoder of [TelemetryFactory]
+     */
+    private fun decodeGeneric(json: String): TelemetryItem {
+        val jsonElement = Json.parseToJsonElement(json)
+        val telemetry = Json.decodeFromJsonElement<Telemetry>(jsonElement)
+        return TelemetryItem(Json.encodeToString(JsonElement.serializer(), jsonElement), telemetry)
+    }
+
+    private fun encode(telemetry: Telemetry): String = Json.encodeToString(Telemetry.serializer(), telemetry)
+
+    private fun record(json: String): Array<Any> = arrayOf(json)
+}
@@ -0,0 +1,32 @@
+package io.jeremymorren.opentelemetry
+
+import io.jeremymorren.opentelemetry.models.Telemetry
+import kotlinx.serialization.json.Json
+import org.testng.Assert.assertEquals
+import org.testng.Assert.assertNotNull
+import org.testng.annotations.Test
+
+/**
+ * [TelemetryFactory] must read the same telemetry as the previous ingestion ([ThreePassIngestion]).
+ * The throughput of both is compared by the `TelemetryFactoryBenchmark` benchmark.
+ */
+class TelemetryFactoryTest {
+    @Test
+    fun readsTheSameTelemetryAsThePreviousIngestion() {
+        val factory = TelemetryFactory()
+        for (record in TelemetryCorpus.records(RECORD_COUNT)) {
+            val line = "OpenTelemetry $record"
+            val json = factory.tryReadRecord(line)
+            assertNotNull(json, line)
+            val item = factory.create(json!!)
+            assertNotNull(item, json)
+            assertEquals(encode(item!!.telemetry), encode(ThreePassIngestion.create(line).telemetry), json)
+        }
+    }
+
+    private fun encode(telemetry: Telemetry): String = Json.encodeToString(Telemetry.serializer(), telemetry)
+
+    private companion object {
+        const val RECORD_COUNT = 2_000
+    }
+}
@@ -0,0 +1,44 @@
+package io.jeremymorren.opentelemetry
+
+import io.jeremymorren.opentelemetry.models.TelemetryItem
+import io.jeremymorren.opentelemetry.settings.FilterTelemetryMode
+import io.jeremymorren.opentelemetry.store.PrimitiveSort
+import io.jeremymorren.opentelemetry.store.SortedPositionIndex
+import org.testng.Assert.assertEquals
+import org.testng.annotations.Test
+
+/**
+ * The values precomputed at decode time must sort and render the telemetry table as the values derived from the
+ * telemetry when they are used ([DerivedTelemetryView]).
+ * The cost of both is compared by the `TelemetryViewBenchmark` benchmark.
+ */
+class TelemetryViewTest {
+    private val items: List<TelemetryItem> by lazy {
+        val factory = TelemetryFactory()
+        TelemetryCorpus.records(ITEM_COUNT, seed = 2).map { factory.create(it)!! }
+    }
+
+    @Test
+    fun sortsByTimestampAsTheDerivedValues() {
+        val derived = DerivedTelemetryView.sortByTimestamp(items)
+        assertEquals(items.sortedBy { it.timestampNanos }, derived)
+
+        val keys = LongArray(items.size) { SortedPositionIndex.sortKey(items[it], FilterTelemetryMode.Timestamp) }
+        val refs = IntArray(items.size) { it }
+        PrimitiveSort.sortByKey(refs, refs.size, keys)
+        assertEquals(refs.map { items[it] }, derived)
+    }
+
+    @Test
+    fun rendersRowsAsTheDerivedValues() {
+        val dateFormat = DerivedTelemetryView.dateFormat()
+        for (item in items) {
+            assertEquals(listOf(item.timestampText, item.type, item.detail, item.detailStyle),
+                DerivedTelemetryView.render(item, dateFormat))
+        }
+    }
+
+    private companion object {
+        const val ITEM_COUNT = 5_000
+    }
+}
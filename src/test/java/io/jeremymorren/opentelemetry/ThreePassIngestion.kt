@@ -0,0 +1,28 @@
+package io.jeremymorren.opentelemetry
+
+import io.jeremymorren.opentelemetry.models.Telemetry
+import io.jeremymorren.opentelemetry.models.TelemetryItem
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.decodeFromJsonElement
+
+/**
+ * The previous ingestion of a debug output line: the record was parsed into a JSON tree, the model was decoded
+ * from the tree, then the record was parsed again to pretty-print it.
+ * Kept to check that [TelemetryFactory] reads the same telemetry, and to compare their throughput.
+ */
+object ThreePassIngestion {
+    private val prettyJson = Json {
+        prettyPrint = true
+        prettyPrintIndent = "  "
+    }
+
+    fun create(line: String): TelemetryItem {
+        val json = line.substring("OpenTelemetry ".length)
+        val jsonElement = Json.decodeFromString<JsonElement>(json)
+        val telemetry = Json.decodeFromJsonElement<Telemetry>(jsonElement)
+        val formatted = prettyJson.encodeToString(JsonObject.serializer(), Json.decodeFromString<JsonObject>(json))
+        return TelemetryItem(formatted, telemetry)
+    }
+}
@@ -0,0 +1,43 @@
+package io.jeremymorren.opentelemetry.models
+
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonObject
+import org.testng.Assert.assertEquals
+import org.testng.Assert.assertNotEquals
+import org.testng.annotations.Test
+
+/**
+ * Dictionaries are equal when their converted values are, whatever the JSON type of the values
+ */
+class ObjectDictionaryTest {
+    @Test
+    fun valuesConvertedToTheSameObjectAreEqual() {
+        val number = dictionary("""{"port":1,"secure":true,"ratio":0.5}""")
+        val text = dictionary("""{"secure":"true","ratio":"0.5","port":"1"}""")
+
+        assertEquals(text, number)
+        assertEquals(text.hashCode(), number.hashCode())
+    }
+
+    @Test
+    fun differentValuesOrKeysAreNotEqual() {
+        val dictionary = dictionary("""{"port":1}""")
+
+        assertNotEquals(dictionary("""{"port":2}"""), dictionary)
+        assertNotEquals(dictionary("""{"port":"one"}"""), dictionary)
+        assertNotEquals(dictionary("""{"port":1,"host":null}"""), dictionary)
+        assertNotEquals(dictionary("""{"host":1}"""), dictionary)
+    }
+
+    @Test
+    fun nestedValuesAreComparedByContent() {
+        val left = dictionary("""{"route":{"method":"GET","ids":[1,"2"]}}""")
+        val right = dictionary("""{"route":{"ids":["1",2],"method":"GET"}}""")
+
+        assertEquals(left, right)
+        assertEquals(left.hashCode(), right.hashCode())
+    }
+
+    private fun dictionary(json: String): ObjectDictionary =
+        ObjectDictionary(Json.parseToJsonElement(json) as JsonObject)
+}
@@ -0,0 +1,51 @@
+package io.jeremymorren.opentelemetry.search;
+
+import io.jeremymorren.opentelemetry.TelemetryDecoder;
+import io.jeremymorren.opentelemetry.TelemetryInterner;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TelemetryQueryTest {
+    private final TelemetryDecoder decoder = new TelemetryDecoder(new TelemetryInterner());
+
+    @Test
+    public void plainQueryIsSearchedAsTyped() {
+        TelemetryQuery query = TelemetryQuery.parse("\"name\":\"orders\"");
+
+        assertEquals(query.getText(), "\"name\":\"orders\"");
+        assertNull(query.getPredicate());
+    }
+
+    @Test
+    public void freeTextKeepsItsQuotesNextToStructuredTerms() {
+        TelemetryQuery query = TelemetryQuery.parse("type:Dependency \"db.name\":\"orders\"");
+
+        assertEquals(query.getText(), "\"db.name\":\"orders\"");
+    }
+
+    @Test
+    public void quotesGroupTheValueOfAStructuredTerm() {
+        TelemetryQuery query = TelemetryQuery.parse("tag.db.statement=\"SELECT 1\"");
+        TelemetryItem select = dependency("SELECT 1");
+
+        assertEquals(query.getText(), "");
+        assertTrue(query.test(select));
+        assertFalse(query.test(dependency("SELECT 2")));
+    }
+
+    @NotNull
+    private TelemetryItem dependency(@NotNull String statement) {
+        TelemetryItem item = decoder.decode("{\"activity\":{\"kind\":\"Client\",\"tags\":{\"db.system\":\"mssql\"," +
+                "\"db.statement\":\"" + statement + "\"}}}");
+        if (item == null) {
+            throw new IllegalArgumentException(statement);
+        }
+        return item;
+    }
+}
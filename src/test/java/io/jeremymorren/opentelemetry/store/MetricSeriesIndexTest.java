@@ -0,0 +1,146 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.TelemetryDecoder;
+import io.jeremymorren.opentelemetry.TelemetryInterner;
+import io.jeremymorren.opentelemetry.models.Metric;
+import io.jeremymorren.opentelemetry.models.ObjectDictionary;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import kotlinx.serialization.json.JsonElementKt;
+import kotlinx.serialization.json.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class MetricSeriesIndexTest {
+    private final TelemetryDecoder decoder = new TelemetryDecoder(new TelemetryInterner());
+
+    @Test
+    public void valuesAreAddedToTheSeriesOfTheirTags() {
+        MetricSeriesIndex index = new MetricSeriesIndex();
+        index.add(metric("requests", "\"GET\"", 1), 0);
+        index.add(metric("requests", "\"POST\"", 2), 1);
+        index.add(metric("requests", "\"GET\"", 3), 2);
+
+        MetricSeries get = series(index, "requests", "GET");
+        assertEquals(get.getCount(), 2);
+        assertEquals(get.getLatestValue(), 3.0);
+        assertEquals(series(index, "requests", "POST").getLatestValue(), 2.0);
+        assertEquals(index.size(), 2);
+    }
+
+    @Test
+    public void seriesIsDroppedWhenItsLastRecordIsEvicted() {
+        MetricSeriesIndex index = new MetricSeriesIndex();
+        index.add(metric("requests", "\"GET\"", 1), 0);
+        index.add(metric("requests", "\"POST\"", 2), 1);
+        index.add(metric("requests", "\"GET\"", 3), 2);
+
+        // GET still has a record in the store: only the value of the evicted record is trimmed
+        index.evicted(0);
+        assertEquals(index.size(), 2);
+        assertEquals(series(index, "requests", "GET").getCount(), 1);
+        assertEquals(series(index, "requests", "GET").getValue(0), 3.0);
+
+        index.evicted(1);
+        assertEquals(index.size(), 1);
+        assertNull(index.get("meter", "requests", tags("POST")));
+        assertEquals(series(index, "requests", "GET").getLatestValue(), 3.0);
+
+        index.evicted(2);
+        assertEquals(index.size(), 0);
+    }
+
+    @Test
+    public void valuesOfEvictedRecordsAreTrimmedAcrossTheRing() {
+        MetricSeries series = new MetricSeries();
+        for (int position = 0; position < 20; position++) {
+            series.add(position, position, position);
+        }
+        series.evicted(9);
+        // Wraps around the end of the ring, then grows it
+        for (int position = 20; position < 45; position++) {
+            series.add(position, position, position);
+        }
+        series.evicted(14);
+
+        assertEquals(series.getCount(), 30);
+        for (int index = 0; index < series.getCount(); index++) {
+            assertEquals(series.getValue(index), 15.0 + index);
+            assertEquals(series.getTime(index), 15 + index);
+        }
+
+        series.evicted(44);
+        assertEquals(series.getCount(), 0);
+    }
+
+    @Test
+    public void leastRecentlyUsedSeriesIsDroppedBeyondTheLimit() {
+        MetricSeriesIndex index = new MetricSeriesIndex();
+        for (int i = 0; i < MetricSeriesIndex.MAX_SERIES; i++) {
+            index.add(metric("metric" + i, "\"GET\"", i), i);
+        }
+        // metric0 is used, so metric1 becomes the least recently used
+        assertNotNull(index.get("meter", "metric0", tags("GET")));
+
+        index.add(metric("new", "\"GET\"", 1), MetricSeriesIndex.MAX_SERIES);
+
+        assertEquals(index.size(), MetricSeriesIndex.MAX_SERIES);
+        assertNotNull(index.get("meter", "metric0", tags("GET")));
+        assertNull(index.get("meter", "metric1", tags("GET")));
+        assertNotNull(index.get("meter", "new", tags("GET")));
+    }
+
+    @Test
+    public void seriesAddedAgainIsNotDroppedByEvictionsOfItsDroppedPredecessor() {
+        MetricSeriesIndex index = new MetricSeriesIndex();
+        index.add(metric("requests", "\"GET\"", 1), 0);
+        // Drops the first series of requests, as the least recently used
+        for (int i = 1; i <= MetricSeriesIndex.MAX_SERIES; i++) {
+            index.add(metric("metric" + i, "\"GET\"", i), i);
+        }
+        assertNull(index.get("meter", "requests", tags("GET")));
+        index.add(metric("requests", "\"GET\"", 2), MetricSeriesIndex.MAX_SERIES + 1);
+
+        index.evicted(0);
+
+        assertEquals(series(index, "requests", "GET").getLatestValue(), 2.0);
+    }
+
+    @Test
+    public void clearDropsAllSeries() {
+        MetricSeriesIndex index = new MetricSeriesIndex();
+        index.add(metric("requests", "\"GET\"", 1), 0);
+        index.add(metric("requests", "\"POST\"", 2), 1);
+
+        index.clear();
+
+        assertEquals(index.size(), 0);
+        assertNull(index.get("meter", "requests", tags("GET")));
+    }
+
+    @NotNull
+    private static MetricSeries series(@NotNull MetricSeriesIndex index, @NotNull String name, @NotNull String method) {
+        MetricSeries series = index.get("meter", name, tags(method));
+        assertNotNull(series, name + " " + method);
+        return series;
+    }
+
+    @NotNull
+    private Metric metric(@NotNull String name, @NotNull String method, long value) {
+        TelemetryItem item = decoder.decode("{\"metric\":{\"name\":\"" + name + "\",\"meterName\":\"meter\"," +
+                "\"points\":[{\"endTime\":\"2024-05-01T10:00:00.0000000Z\",\"tags\":{\"method\":" + method + "}," +
+                "\"longSum\":" + value + "}]}}");
+        assertNotNull(item);
+        return item.getTelemetry().getMetric();
+    }
+
+    @NotNull
+    private static ObjectDictionary tags(@NotNull String method) {
+        return new ObjectDictionary(new JsonObject(Map.of("method", JsonElementKt.JsonPrimitive(method))));
+    }
+}
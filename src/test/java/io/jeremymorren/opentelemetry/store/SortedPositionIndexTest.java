@@ -0,0 +1,179 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.TelemetryDecoder;
+import io.jeremymorren.opentelemetry.TelemetryInterner;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import io.jeremymorren.opentelemetry.settings.FilterTelemetryMode;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+public class SortedPositionIndexTest {
+    private final TelemetryDecoder decoder = new TelemetryDecoder(new TelemetryInterner());
+
+    @Test
+    public void timestampModeOrdersByStartTime() {
+        // Received out of order: the second activity started first
+        List<TelemetryItem> items = List.of(
+                activity("2024-05-01T10:00:02.0000000Z", "00:00:00.0010000"),
+                activity("2024-05-01T10:00:00.0000000Z", "00:00:00.0030000"),
+                activity("2024-05-01T10:00:01.0000000Z", "00:00:00.0020000"));
+
+        SortedPositionIndex index = insertAll(items, FilterTelemetryMode.Timestamp);
+
+        assertEquals(positions(index), new long[]{1, 2, 0});
+    }
+
+    @Test
+    public void durationModeOrdersByDuration() {
+        List<TelemetryItem> items = List.of(
+                activity("2024-05-01T10:00:00.0000000Z", "00:00:00.0030000"),
+                activity("2024-05-01T10:00:01.0000000Z", "00:00:00.0010000"),
+                activity("2024-05-01T10:00:02.0000000Z", "00:00:01.0000000"),
+                activity("2024-05-01T10:00:03.0000000Z", "00:00:00.0020000"));
+
+        SortedPositionIndex index = insertAll(items, FilterTelemetryMode.Duration);
+
+        assertEquals(positions(index), new long[]{1, 3, 0, 2});
+    }
+
+    @Test
+    public void defaultModeKeepsArrivalOrder() {
+        List<TelemetryItem> items = List.of(
+                activity("2024-05-01T10:00:02.0000000Z", "00:00:01.0000000"),
+                activity("2024-05-01T10:00:00.0000000Z", "00:00:00.0010000"),
+                activity("2024-05-01T10:00:01.0000000Z", "00:00:00.0020000"));
+
+        SortedPositionIndex index = insertAll(items, FilterTelemetryMode.Default);
+
+        assertEquals(positions(index), new long[]{0, 1, 2});
+    }
+
+    @Test
+    public void equalKeysAreOrderedByPosition() {
+        TelemetryItem item = activity("2024-05-01T10:00:00.0000000Z", "00:00:00.0010000");
+        long key = SortedPositionIndex.sortKey(item, FilterTelemetryMode.Duration);
+        List<Long> shuffled = new ArrayList<>();
+        for (long position = 0; position < 100; position++) {
+            shuffled.add(position);
+        }
+        Collections.shuffle(shuffled, new Random(42));
+
+        SortedPositionIndex index = new SortedPositionIndex();
+        for (long position : shuffled) {
+            index.insert(key, position);
+        }
+
+        for (int rank = 0; rank < 100; rank++) {
+            assertEquals(index.positionAt(rank), rank);
+        }
+    }
+
+    @Test
+    public void itemsWithoutDurationSortFirst() {
+        TelemetryItem log = item("{\"log\":{\"timestamp\":\"2024-05-01T10:00:00.0000000Z\",\"message\":\"m\"}}");
+        TelemetryItem slow = activity("2024-05-01T10:00:01.0000000Z", "00:00:01.0000000");
+
+        SortedPositionIndex index = insertAll(List.of(slow, log), FilterTelemetryMode.Duration);
+
+        assertEquals(positions(index), new long[]{1, 0});
+    }
+
+    @Test
+    public void removeReturnsRankAndReinsertRestoresIt() {
+        List<TelemetryItem> items = List.of(
+                activity("2024-05-01T10:00:00.0000000Z", "00:00:00.0040000"),
+                activity("2024-05-01T10:00:01.0000000Z", "00:00:00.0010000"),
+                activity("2024-05-01T10:00:02.0000000Z", "00:00:00.0030000"),
+                activity("2024-05-01T10:00:03.0000000Z", "00:00:00.0020000"));
+        SortedPositionIndex index = insertAll(items, FilterTelemetryMode.Duration);
+        long key = SortedPositionIndex.sortKey(items.get(2), FilterTelemetryMode.Duration);
+
+        assertEquals(index.remove(key, 2), 2);
+        assertEquals(positions(index), new long[]{1, 3, 0});
+        // Not in the index anymore, or never was
+        assertEquals(index.remove(key, 2), -1);
+        assertEquals(index.remove(key, 7), -1);
+
+        assertEquals(index.insert(key, 2), 2);
+        assertEquals(positions(index), new long[]{1, 3, 2, 0});
+    }
+
+    @Test
+    public void removedNodesAreReused() {
+        SortedPositionIndex index = new SortedPositionIndex();
+        Random random = new Random(7);
+        List<long[]> entries = new ArrayList<>();
+        for (long position = 0; position < 1_000; position++) {
+            long key = random.nextInt(50);
+            index.insert(key, position);
+            entries.add(new long[]{key, position});
+            if (position % 3 == 0) {
+                long[] removed = entries.remove(random.nextInt(entries.size()));
+                index.remove(removed[0], removed[1]);
+            }
+        }
+
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        assertEquals(index.size(), entries.size());
+        for (int rank = 0; rank < entries.size(); rank++) {
+            assertEquals(index.positionAt(rank), entries.get(rank)[1]);
+        }
+    }
+
+    @Test
+    public void buildMatchesInsertions() {
+        long[] keys = {1, 1, 2, 5, 5, 5, 9};
+        long[] positions = {3, 8, 1, 0, 4, 6, 2};
+
+        SortedPositionIndex built = SortedPositionIndex.build(keys, positions, keys.length);
+        SortedPositionIndex inserted = new SortedPositionIndex();
+        for (int i = keys.length - 1; i >= 0; i--) {
+            inserted.insert(keys[i], positions[i]);
+        }
+
+        assertEquals(positions(built), positions);
+        assertEquals(positions(inserted), positions);
+        assertEquals(built.remove(5, 4), 4);
+        assertEquals(built.insert(0, 4), 0);
+    }
+
+    @NotNull
+    private SortedPositionIndex insertAll(@NotNull List<TelemetryItem> items, @NotNull FilterTelemetryMode mode) {
+        SortedPositionIndex index = new SortedPositionIndex();
+        for (int position = 0; position < items.size(); position++) {
+            index.insert(SortedPositionIndex.sortKey(items.get(position), mode), position);
+        }
+        return index;
+    }
+
+    @NotNull
+    private static long[] positions(@NotNull SortedPositionIndex index) {
+        long[] positions = new long[index.size()];
+        for (int rank = 0; rank < positions.length; rank++) {
+            positions[rank] = index.positionAt(rank);
+        }
+        return positions;
+    }
+
+    @NotNull
+    private TelemetryItem activity(@NotNull String startTime, @NotNull String duration) {
+        return item("{\"activity\":{\"displayName\":\"GET /orders\",\"startTime\":\"" + startTime +
+                "\",\"duration\":\"" + duration + "\"}}");
+    }
+
+    @NotNull
+    private TelemetryItem item(@NotNull String json) {
+        TelemetryItem item = decoder.decode(json);
+        if (item == null) {
+            throw new IllegalArgumentException("Not a telemetry record: " + json);
+        }
+        return item;
+    }
+}
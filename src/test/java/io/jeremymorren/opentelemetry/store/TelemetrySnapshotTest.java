@@ -0,0 +1,81 @@
+package io.jeremymorren.opentelemetry.store;
+
+import io.jeremymorren.opentelemetry.TelemetryDecoder;
+import io.jeremymorren.opentelemetry.TelemetryInterner;
+import io.jeremymorren.opentelemetry.models.TelemetryItem;
+import io.jeremymorren.opentelemetry.models.TelemetryType;
+import io.jeremymorren.opentelemetry.settings.FilterTelemetryMode;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+
+public class TelemetrySnapshotTest {
+    private final TelemetryDecoder decoder = new TelemetryDecoder(new TelemetryInterner());
+
+    @Test
+    public void selectIndexOrdersByTheKeysOfTheSnapshot() {
+        TelemetryStore store = store(
+                activity("GET /a", "2024-05-01T10:00:02.0000000Z"),
+                activity("GET /b", "2024-05-01T10:00:00.0000000Z"),
+                activity("GET /c", "2024-05-01T10:00:01.0000000Z"));
+
+        SortedPositionIndex index = store.snapshot(allTypes(), FilterTelemetryMode.Timestamp).selectIndex(null, null);
+
+        assertEquals(positions(index), new long[]{1, 2, 0});
+        // The keys of the index are the sort keys of the items: later items are inserted in order
+        TelemetryItem item = activity("GET /d", "2024-05-01T10:00:01.5000000Z");
+        assertEquals(index.insert(SortedPositionIndex.sortKey(item, FilterTelemetryMode.Timestamp), 3), 2);
+    }
+
+    @Test
+    public void selectIndexKeepsArrivalOrderInDefaultMode() {
+        TelemetryStore store = store(
+                activity("GET /a", "2024-05-01T10:00:02.0000000Z"),
+                activity("GET /b", "2024-05-01T10:00:00.0000000Z"),
+                activity("GET /c", "2024-05-01T10:00:01.0000000Z"));
+
+        SortedPositionIndex index = store.snapshot(allTypes(), FilterTelemetryMode.Default)
+                .selectIndex(new long[]{0, 2, 7}, item -> !item.getJson().contains("/a"));
+
+        assertEquals(positions(index), new long[]{2});
+    }
+
+    @NotNull
+    private TelemetryStore store(@NotNull TelemetryItem... items) {
+        TelemetryStore store = new TelemetryStore();
+        for (TelemetryItem item : items) {
+            store.add(item, 0, RetentionPolicy.UNLIMITED, (position, evicted) -> {
+            });
+        }
+        return store;
+    }
+
+    @NotNull
+    private static SelectionMask allTypes() {
+        boolean[] types = new boolean[TelemetryType.values().length + 1];
+        Arrays.fill(types, true);
+        return new SelectionMask(types, null, null);
+    }
+
+    @NotNull
+    private static long[] positions(@NotNull SortedPositionIndex index) {
+        long[] positions = new long[index.size()];
+        for (int rank = 0; rank < positions.length; rank++) {
+            positions[rank] = index.positionAt(rank);
+        }
+        return positions;
+    }
+
+    @NotNull
+    private TelemetryItem activity(@NotNull String displayName, @NotNull String startTime) {
+        TelemetryItem item = decoder.decode("{\"activity\":{\"displayName\":\"" + displayName +
+                "\",\"startTime\":\"" + startTime + "\"}}");
+        if (item == null) {
+            throw new IllegalArgumentException(displayName);
+        }
+        return item;
+    }
+}